@@ -0,0 +1,28 @@
+package edu.cg.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.Scene;
+
+/**
+ * Loads the benchmark scenes. Scenes.scene2() and scene3() pick random
+ * materials, so the benchmarks use fixed JSON snapshots of them (saved by the
+ * scenes creator) to render the same thing on every run.
+ */
+class BenchScenes {
+	static Scene load(String name) {
+		try (InputStream in = BenchScenes.class.getResourceAsStream("/scenes/" + name + ".json")) {
+			if (in == null)
+				throw new IllegalArgumentException("Unknown benchmark scene: " + name);
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			return GsonMaker.getInstance().fromJson(reader, Scene.class);
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't load " + name, e);
+		}
+	}
+}
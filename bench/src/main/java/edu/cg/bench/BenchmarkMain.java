@@ -0,0 +1,56 @@
+package edu.cg.bench;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options. Unless a result
+ * file or format is given, the results are written as JSON to
+ * bench/results/jmh-<timestamp>.json so runs can be compared over time. The
+ * folder is found from the location of the jar (bench/target), so it doesn't
+ * depend on the working directory.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+		if (cmd.shouldList()) {
+			new Runner(cmd).list();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (!cmd.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!cmd.getResult().hasValue()) {
+			File resultsDir = resultsDirectory();
+			if (!resultsDir.exists() && !resultsDir.mkdirs())
+				throw new RuntimeException("Couldn't create the folder results...");
+			String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+			options.result(new File(resultsDir, "jmh-" + timestamp + ".json").getPath());
+		}
+
+		new Runner(options.build()).run();
+	}
+
+	// The jar (or the classes folder when run from an IDE) is in bench/target.
+	private static File resultsDirectory() throws URISyntaxException {
+		CodeSource codeSource = BenchmarkMain.class.getProtectionDomain().getCodeSource();
+		if (codeSource == null)
+			return new File("results");
+		File target = new File(codeSource.getLocation().toURI()).getAbsoluteFile().getParentFile();
+		return new File(target.getParentFile(), "results");
+	}
+}
@@ -0,0 +1,60 @@
+package edu.cg.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.camera.PinholeCamera;
+
+/**
+ * Pixel to image-plain transformation of the pinhole camera, one image row per
+ * invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraBenchmark {
+	private static final int WIDTH = 512;
+
+	private PinholeCamera camera;
+	private double[] directions = new double[3 * WIDTH];
+	private int y = 0;
+
+	@Setup
+	public void setup() {
+		camera = new PinholeCamera(new Point(0, 2, 6), new Vec(0, -0.1, -1), new Vec(0, 1, 0), 2);
+		camera.initResolution(WIDTH, WIDTH, 90);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(WIDTH)
+	public void transformRow(Blackhole bh) {
+		y = (y + 1) % WIDTH;
+		for (int x = 0; x < WIDTH; ++x)
+			bh.consume(camera.transform(x, y));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(WIDTH)
+	public double[] rayDirectionsRow() {
+		y = (y + 1) % WIDTH;
+		camera.rayDirections(0, y, WIDTH, 1, directions);
+		return directions;
+	}
+}
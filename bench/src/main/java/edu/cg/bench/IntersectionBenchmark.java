@@ -0,0 +1,81 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+
+/**
+ * Ray-sphere and ray-plain intersection throughput, for nearest-hit and any-hit
+ * (shadow) queries. About half of the rays hit the sphere.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntersectionBenchmark {
+	private static final int RAYS = 1024;
+
+	private Sphere sphere;
+	private Plain plain;
+	private Ray[] rays;
+
+	@Setup
+	public void setup() {
+		sphere = new Sphere(new Point(0, 0, -5), 1);
+		plain = new Plain(new Vec(0, 1, 0), new Point(0, -1, 0));
+		Random random = new Random(42);
+		rays = new Ray[RAYS];
+		for (int i = 0; i < RAYS; ++i) {
+			Point target = new Point(random.nextDouble() * 3 - 1.5, random.nextDouble() * 3 - 1.5, -5);
+			rays[i] = new Ray(new Point(0, 0, 0), target);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void sphereIntersect(Blackhole bh) {
+		for (Ray ray : rays)
+			bh.consume(sphere.intersect(ray));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void sphereAnyHit(Blackhole bh) {
+		for (Ray ray : rays)
+			bh.consume(sphere.intersects(ray, 10));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void plainIntersect(Blackhole bh) {
+		for (Ray ray : rays)
+			bh.consume(plain.intersect(ray));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void plainAnyHit(Blackhole bh) {
+		for (Ray ray : rays)
+			bh.consume(plain.intersects(ray, 10));
+	}
+}
@@ -0,0 +1,88 @@
+package edu.cg.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.algebra.MutableVec;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+
+/**
+ * The vector kernels of Ops, and the in-place MutableVec equivalents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpsBenchmark {
+	private Vec u, v, normal;
+	private Point p;
+	private MutableVec m;
+
+	@Setup
+	public void setup() {
+		u = new Vec(0.3, -1.2, 2.5);
+		v = new Vec(-0.7, 0.4, 1.1);
+		normal = new Vec(0, 1, 0);
+		p = new Point(1, 2, 3);
+		m = new MutableVec();
+	}
+
+	@Benchmark
+	public double dot() {
+		return Ops.dot(u, v);
+	}
+
+	@Benchmark
+	public Vec cross() {
+		return Ops.cross(u, v);
+	}
+
+	@Benchmark
+	public Vec add() {
+		return Ops.add(u, v);
+	}
+
+	@Benchmark
+	public Vec scale() {
+		return Ops.mult(2.5, u);
+	}
+
+	@Benchmark
+	public Vec neg() {
+		return Ops.neg(u);
+	}
+
+	@Benchmark
+	public Vec normalize() {
+		return Ops.normalize(u);
+	}
+
+	@Benchmark
+	public Vec reflect() {
+		return Ops.reflect(u, normal);
+	}
+
+	@Benchmark
+	public Point pointAlongRay() {
+		return Ops.add(p, 2.5, v);
+	}
+
+	@Benchmark
+	public MutableVec mutableAddScaleNormalize() {
+		return m.set(u).add(v).mult(2.5).normalize();
+	}
+}
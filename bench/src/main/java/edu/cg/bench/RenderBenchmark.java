@@ -0,0 +1,53 @@
+package edu.cg.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.scene.Scene;
+
+/**
+ * End to end Scene.render at a fixed resolution. scene4 isn't included since
+ * Dome.intersect is not implemented.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+	@Param({ "scene1", "scene2", "scene3" })
+	public String sceneName;
+
+	@Param({ "400" })
+	public int size;
+
+	@Param({ "1" })
+	public int antiAliasingFactor;
+
+	private Scene scene;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		scene = BenchScenes.load(sceneName).initAntiAliasingFactor(antiAliasingFactor);
+	}
+
+	@Benchmark
+	public BufferedImage render() throws Exception {
+		return scene.render(size, size, 90, s -> {
+		});
+	}
+}
@@ -0,0 +1,97 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.SphereSet;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Nearest-hit and any-hit queries against the 16 spheres of the pool triangle
+ * of scene2, packed in a SphereSet vs. tested one surface at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SphereSetBenchmark {
+	private static final int RAYS = 1024;
+
+	private SphereSet spheres;
+	private Surface[] surfaces;
+	private Ray[] rays;
+
+	@Setup
+	public void setup() {
+		spheres = new SphereSet();
+		for (int depth = 0; depth < 4; depth++)
+			for (int width = -depth; width <= depth; width++)
+				spheres.add(new Point(width, 0, -depth), 0.5, new Material());
+		surfaces = spheres.surfaces().toArray(new Surface[0]);
+
+		Random random = new Random(42);
+		rays = new Ray[RAYS];
+		for (int i = 0; i < RAYS; ++i) {
+			Point target = new Point(random.nextDouble() * 8 - 4, random.nextDouble() * 2 - 1, -3);
+			rays[i] = new Ray(new Point(0, 2, 6), target);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void packedIntersect(Blackhole bh) {
+		for (Ray ray : rays)
+			bh.consume(spheres.intersect(ray));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void surfacesIntersect(Blackhole bh) {
+		for (Ray ray : rays) {
+			Hit closest = null;
+			for (Surface surface : surfaces) {
+				Hit hit = surface.intersect(ray);
+				if (hit != null && (closest == null || hit.compareTo(closest) < 0))
+					closest = hit;
+			}
+			bh.consume(closest);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void packedAnyHit(Blackhole bh) {
+		for (Ray ray : rays)
+			bh.consume(spheres.intersects(ray, 100));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RAYS)
+	public void surfacesAnyHit(Blackhole bh) {
+		for (Ray ray : rays) {
+			boolean any = false;
+			for (int i = 0; i < surfaces.length && !any; ++i)
+				any = surfaces[i].intersects(ray, 100);
+			bh.consume(any);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import edu.cg.algebra.Ops;
+import edu.cg.scene.FrameBuffer;
+import edu.cg.scene.HdrImage;
+import edu.cg.scene.MappedFrameBuffer;
+import edu.cg.scene.RenderExecutor;
+import edu.cg.scene.RenderExecutorType;
+import edu.cg.scene.RenderStats;
+import edu.cg.scene.Scene;
+import edu.cg.scene.ToneMapper;
+import edu.cg.scene.acceleration.AccelerationCache;
+import edu.cg.scene.acceleration.AcceleratorType;
+import edu.cg.scene.io.PfmFile;
+import edu.cg.scene.io.PngEncoder;
+import edu.cg.scene.io.SceneFiles;
+import edu.cg.scene.io.StreamingPngWriter;
+
+/**
+ * A headless entry point that renders scene files (as saved by the scenes
+ * creator) to PNG files in the outputs folder, without opening any window. An
+ * image is named after its scene file (scene1.json gives scene1.png), and
+ * files with the same name get their position in the list appended.
+ * 
+ * Usage: BatchRenderer [options] scene.json|scene.cgs...
+ */
+public class BatchRenderer {
+	// Bigger images are rendered into a mapped framebuffer by default (256 MB on
+	// the heap).
+	private static final long MAPPED_PIXELS = 1L << 26;
+	private static final String USAGE = "Usage: BatchRenderer [options] scene.json|scene.cgs..." + System.lineSeparator()
+			+ "  --width <pixels>        image width (default 400)" + System.lineSeparator()
+			+ "  --height <pixels>       image height (default 400)" + System.lineSeparator()
+			+ "  --view-angle <degrees>  view angle in (0, 180) (default 90)" + System.lineSeparator()
+			+ "  --aa <1..3>             anti aliasing factor (default: the scene's)" + System.lineSeparator()
+			+ "  --recursion <1..10>     max recursion level (default: the scene's)" + System.lineSeparator()
+			+ "  --reflections <bool>    render reflections (default: the scene's)" + System.lineSeparator()
+			+ "  --refractions <bool>    render refractions (default: the scene's)" + System.lineSeparator()
+			+ "  --min-contribution <c>  skip secondary rays whose path weight is at most c"
+			+ System.lineSeparator() + "                          (default: the scene's, 0 is exact)" + System.lineSeparator()
+			+ "  --accelerator <a>       bvh or grid (default: the scene's)" + System.lineSeparator()
+			+ "  --threads <n>           number of render threads (default: available processors)"
+			+ System.lineSeparator() + "  --executor <e>          fixed, fork-join or virtual (default fork-join)"
+			+ System.lineSeparator() + "  --framebuffer <f>       heap, or mapped to stream the PNG from a file (default:"
+			+ System.lineSeparator() + "                          mapped above " + MAPPED_PIXELS + " pixels without HDR)"
+			+ System.lineSeparator() + "  --hdr <bool>            also save the colors before tone mapping as .pfm"
+			+ System.lineSeparator() + "                          (default false)"
+			+ System.lineSeparator() + "  --exposure <stops>      scales the colors by 2^stops (default 0)"
+			+ System.lineSeparator() + "  --gamma <g>             raises the colors to 1/g (default 1)"
+			+ System.lineSeparator() + "  --tone-map <o>          clip or reinhard (default clip)"
+			+ System.lineSeparator() + "  --cache <dir>           folder of the cached BVHs, or off (default ./cache,"
+			+ System.lineSeparator() + "                          never cleaned up)"
+			+ System.lineSeparator() + "  --output <dir>          output folder (default outputs)";
+
+	private int width = 400;
+	private int height = 400;
+	private double viewAngle = 90.0;
+	private Integer antiAliasingFactor = null;
+	private Integer maxRecursionLevel = null;
+	private Boolean renderReflections = null;
+	private Boolean renderRefractions = null;
+	private Double contributionThreshold = null;
+	private AcceleratorType accelerator = null;
+	private int nThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private RenderExecutorType executorType = RenderExecutorType.FORK_JOIN;
+	private Boolean mappedFrameBuffer = null;
+	private boolean saveHdr = false;
+	private double exposure = 0;
+	private double gamma = 1;
+	private ToneMapper.Operator toneMapOperator = ToneMapper.Operator.CLIP;
+	private ToneMapper toneMapper = ToneMapper.CLIP;
+	private AccelerationCache cache = AccelerationCache.inDefaultDirectory();
+	private File outputDir = new File("outputs");
+	private List<String> sceneFiles = new ArrayList<>();
+
+	public static void main(String[] args) {
+		// Make sure nothing in the process tries to reach a display.
+		System.setProperty("java.awt.headless", "true");
+
+		BatchRenderer renderer = new BatchRenderer();
+		try {
+			renderer.parseArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		System.exit(renderer.renderAll() ? 0 : 1);
+	}
+
+	private void parseArgs(String[] args) throws IllegalArgumentException {
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				sceneFiles.add(arg);
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			try {
+				switch (arg) {
+				case "--width":
+					width = Integer.parseInt(value);
+					break;
+				case "--height":
+					height = Integer.parseInt(value);
+					break;
+				case "--view-angle":
+					viewAngle = Double.parseDouble(value);
+					break;
+				case "--aa":
+					antiAliasingFactor = Integer.parseInt(value);
+					break;
+				case "--recursion":
+					maxRecursionLevel = Integer.parseInt(value);
+					break;
+				case "--reflections":
+					renderReflections = Boolean.parseBoolean(value);
+					break;
+				case "--refractions":
+					renderRefractions = Boolean.parseBoolean(value);
+					break;
+				case "--min-contribution":
+					contributionThreshold = Double.parseDouble(value);
+					break;
+				case "--accelerator":
+					try {
+						accelerator = AcceleratorType.valueOf(value.toUpperCase());
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+					}
+					break;
+				case "--threads":
+					nThreads = Integer.parseInt(value);
+					break;
+				case "--executor":
+					try {
+						executorType = RenderExecutorType.valueOf(value.toUpperCase().replace('-', '_'));
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+					}
+					break;
+				case "--framebuffer":
+					if (!value.equals("heap") && !value.equals("mapped"))
+						throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+					mappedFrameBuffer = value.equals("mapped");
+					break;
+				case "--hdr":
+					saveHdr = Boolean.parseBoolean(value);
+					break;
+				case "--exposure":
+					exposure = Double.parseDouble(value);
+					break;
+				case "--gamma":
+					gamma = Double.parseDouble(value);
+					break;
+				case "--tone-map":
+					try {
+						toneMapOperator = ToneMapper.Operator.valueOf(value.toUpperCase());
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+					}
+					break;
+				case "--cache":
+					cache = value.equals("off") ? null : new AccelerationCache(Paths.get(value));
+					break;
+				case "--output":
+					outputDir = new File(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+			}
+		}
+
+		// Same limits as the rendering parameters selector.
+		if (sceneFiles.isEmpty())
+			throw new IllegalArgumentException("No scene files were given");
+		if (width <= 0)
+			throw new IllegalArgumentException("Width argument must be positive");
+		if (height <= 0)
+			throw new IllegalArgumentException("Height argument must be positive");
+		if (viewAngle <= Ops.epsilon || viewAngle >= 180.0)
+			throw new IllegalArgumentException("View angle must be in the range (0.0, 180.0) exclusive.");
+		if (antiAliasingFactor != null && (antiAliasingFactor < 1 || antiAliasingFactor > 3))
+			throw new IllegalArgumentException("Anti aliasing factor must be 1, 2 or 3.");
+		if (maxRecursionLevel != null && (maxRecursionLevel < 1 || maxRecursionLevel > 10))
+			throw new IllegalArgumentException("Recursion level must be an Integer between 1 to 10.");
+		if (nThreads <= 0)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		if (contributionThreshold != null && !(contributionThreshold >= 0 && contributionThreshold < 1))
+			throw new IllegalArgumentException("Contribution threshold must be in the range [0.0, 1.0).");
+		toneMapper = new ToneMapper(toneMapOperator, exposure, gamma);
+		if (Boolean.TRUE.equals(mappedFrameBuffer) && isHdr())
+			throw new IllegalArgumentException("HDR and tone mapping need the heap framebuffer");
+	}
+
+	/**
+	 * Renders all the scene files.
+	 * 
+	 * @return true if all the scenes were rendered and saved.
+	 */
+	private boolean renderAll() {
+		if (!outputDir.exists() && !outputDir.mkdirs()) {
+			log("Couldn't create the folder " + outputDir + "...");
+			return false;
+		}
+
+		// All the scenes are rendered on the same threads.
+		RenderExecutor executor;
+		try {
+			executor = executorType.create(nThreads);
+		} catch (UnsupportedOperationException e) {
+			log(e.getMessage());
+			return false;
+		}
+		boolean success = true;
+		Set<String> outputNames = new HashSet<>();
+		try {
+			for (int i = 0; i < sceneFiles.size(); ++i) {
+				String sceneFile = sceneFiles.get(i);
+				String outputName = outputName(sceneFile);
+				if (!outputNames.add(outputName)) {
+					outputName += "-" + (i + 1);
+					outputNames.add(outputName);
+				}
+				try {
+					render(sceneFile, outputName, executor);
+				} catch (Exception e) {
+					log("Couldn't render " + sceneFile + System.lineSeparator() + "Exception: " + e);
+					success = false;
+				}
+			}
+		} finally {
+			executor.close();
+		}
+		return success;
+	}
+
+	// The name of the scene file without its folder and extension.
+	private static String outputName(String sceneFile) {
+		String name = Paths.get(sceneFile).getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	private void render(String sceneFile, String outputName, RenderExecutor executor) throws Exception {
+		Scene scene = SceneFiles.load(Paths.get(sceneFile));
+
+		if (antiAliasingFactor != null)
+			scene.initAntiAliasingFactor(antiAliasingFactor);
+		if (maxRecursionLevel != null)
+			scene.initMaxRecursionLevel(maxRecursionLevel);
+		if (renderReflections != null)
+			scene.initRenderReflections(renderReflections);
+		if (renderRefractions != null)
+			scene.initRenderRefarctions(renderRefractions);
+		if (contributionThreshold != null)
+			scene.initContributionThreshold(contributionThreshold);
+		if (accelerator != null)
+			scene.initAccelerator(accelerator);
+		scene.initAccelerationCache(cache);
+
+		log(scene.getName() + " has been loaded from " + sceneFile);
+		File file = new File(outputDir, outputName + ".png");
+		boolean mapped = mappedFrameBuffer != null ? mappedFrameBuffer
+				: !isHdr() && (long) width * height > MAPPED_PIXELS;
+		RenderStats stats;
+		if (mapped) {
+			stats = renderMapped(scene, executor, file);
+		} else if (isHdr()) {
+			stats = renderHdr(scene, executor, file, new File(outputDir, outputName + PfmFile.EXTENSION));
+		} else {
+			BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			stats = scene.render(img, viewAngle, executor, false, null, BatchRenderer::log);
+			if (!ImageIO.write(img, "png", file))
+				throw new RuntimeException("No PNG writer is available");
+		}
+
+		log(String.format("%s: %dx%d rendered in %.3f s (%d rays, %.0f rays/s)", scene.getName(), width, height,
+				stats.getRenderSeconds(), stats.getTotalRays(), stats.getRaysPerSecond()));
+		log("File: " + file.getPath() + " has been saved.");
+	}
+
+	// Whether the colors are kept before they are clipped.
+	private boolean isHdr() {
+		return saveHdr || toneMapper.exposure() != 0 || toneMapper.gamma() != 1
+				|| toneMapper.operator() != ToneMapper.Operator.CLIP;
+	}
+
+	/**
+	 * Renders the colors into an HDR image, maps them into the PNG file and saves
+	 * them into hdrFile if asked to.
+	 */
+	private RenderStats renderHdr(Scene scene, RenderExecutor executor, File file, File hdrFile)
+			throws Exception {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		HdrImage hdr = new HdrImage(width, height);
+		RenderStats stats = scene.render(FrameBuffer.of(img), hdr, viewAngle, executor, false, null,
+				BatchRenderer::log);
+
+		long start = System.nanoTime();
+		toneMapper.apply(hdr, FrameBuffer.of(img));
+		log(String.format("Applied %s in %.3f s", toneMapper, (System.nanoTime() - start) / 1e9));
+		if (!ImageIO.write(img, "png", file))
+			throw new RuntimeException("No PNG writer is available");
+		if (saveHdr) {
+			PfmFile.write(hdr, hdrFile.toPath());
+			log("File: " + hdrFile.getPath() + " has been saved.");
+		}
+		return stats;
+	}
+
+	/**
+	 * Renders into a framebuffer mapped from a temporary file in the output
+	 * folder, and writes the rows into the PNG file as they are done, so the heap
+	 * holds only the tiles being rendered.
+	 */
+	private RenderStats renderMapped(Scene scene, RenderExecutor executor, File file) throws Exception {
+		log("Rendering into a framebuffer mapped from " + outputDir);
+		try (MappedFrameBuffer frameBuffer = MappedFrameBuffer.createTemp(outputDir.toPath(), width, height)) {
+			// Every stream is a resource of its own, so it is closed even if the next
+			// one can't be created. The image is complete once they are closed, so
+			// it's kept even if the framebuffer then fails to close.
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+					PngEncoder encoder = new PngEncoder(out, width, height);
+					StreamingPngWriter writer = new StreamingPngWriter(frameBuffer, encoder)) {
+				return scene.render(frameBuffer, viewAngle, executor, false, writer, BatchRenderer::log);
+			} catch (Exception e) {
+				// Don't leave a partial image behind.
+				file.delete();
+				throw e;
+			}
+		}
+	}
+
+	private static void log(String s) {
+		Calendar cal = Calendar.getInstance();
+		System.out.println(String.format("[%02d:%02d:%02d] ~ %s", cal.get(Calendar.HOUR_OF_DAY),
+				cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND), s));
+	}
+}
@@ -0,0 +1,49 @@
+package edu.cg;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import edu.cg.scene.Scene;
+import edu.cg.scene.io.BinaryScene;
+import edu.cg.scene.io.SceneFiles;
+
+/**
+ * Converts JSON scene files into binary ones (see BinaryScene), which load much
+ * faster when the scene has many spheres.
+ * 
+ * Usage: SceneConverter scene.json [output.cgs]
+ */
+public class SceneConverter {
+	private static final String USAGE = "Usage: SceneConverter scene.json [output" + BinaryScene.EXTENSION + "]"
+			+ System.lineSeparator() + "  The output defaults to the input with the " + BinaryScene.EXTENSION
+			+ " extension.";
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		Path input = Paths.get(args[0]);
+		Path output = args.length > 1 ? Paths.get(args[1]) : Paths.get(withExtension(args[0]));
+		try {
+			long start = System.nanoTime();
+			Scene scene = SceneFiles.load(input);
+			long loaded = System.nanoTime();
+			BinaryScene.write(scene, output);
+			System.out.println(String.format("%s: %d surfaces loaded in %.3f s, written to %s (%d bytes) in %.3f s",
+					input, scene.getSurfaces().size(), (loaded - start) / 1e9, output, Files.size(output),
+					(System.nanoTime() - loaded) / 1e9));
+		} catch (Exception e) {
+			System.err.println("Couldn't convert " + input + System.lineSeparator() + "Exception: " + e);
+			System.exit(1);
+		}
+	}
+
+	private static String withExtension(String file) {
+		int dot = file.lastIndexOf('.');
+		int separator = Math.max(file.lastIndexOf('/'), file.lastIndexOf('\\'));
+		return (dot > separator ? file.substring(0, dot) : file) + BinaryScene.EXTENSION;
+	}
+}
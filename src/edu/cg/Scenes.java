@@ -11,6 +11,7 @@ import edu.cg.scene.objects.Material;
 import edu.cg.scene.objects.Plain;
 import edu.cg.scene.objects.Shape;
 import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.SphereSet;
 import edu.cg.scene.objects.Surface;
 
 public class Scenes {
@@ -46,15 +47,14 @@ public class Scenes {
 		finalScene.addSurface(plainSurface);
 		
 		// (2) We will also add spheres to form a triangle shape (similar to a pool game). 
+		SphereSet spheres = new SphereSet();
 		for (int depth = 0; depth < 4; depth++) {
 			for(int width=-1*depth; width<=depth; width++) {
-				Shape sphereShape = new Sphere(new Point((double)width, 0.0, -1.0*(double)depth), 0.5);
-				Material sphereMat = Material.getRandomMaterial();
-				Surface sphereSurface = new Surface(sphereShape, sphereMat);
-				finalScene.addSurface(sphereSurface);
+				spheres.add(new Point((double)width, 0.0, -1.0*(double)depth), 0.5, Material.getRandomMaterial());
 			}
 			
 		}
+		finalScene.addSpheres(spheres);
 		// Add lighting condition:
 		DirectionalLight directionalLight=new DirectionalLight(new Vec(0.5,-0.5,0.0),new Vec(0.7));
 		finalScene.addLightSource(directionalLight);
@@ -80,15 +80,14 @@ public class Scenes {
 		finalScene.addSurface(plainSurface);
 		
 		// (2) We will also add spheres to form a triangle shape (similar to a pool game). 
+		SphereSet spheres = new SphereSet();
 		for (int depth = 0; depth < 4; depth++) {
 			for(int width=-1*depth; width<=depth; width++) {
-				Shape sphereShape = new Sphere(new Point((double)width, 0.0, -1.0*(double)depth), 0.5);
-				Material sphereMat = Material.getRandomMaterial();
-				Surface sphereSurface = new Surface(sphereShape, sphereMat);
-				finalScene.addSurface(sphereSurface);
+				spheres.add(new Point((double)width, 0.0, -1.0*(double)depth), 0.5, Material.getRandomMaterial());
 			}
 			
 		}
+		finalScene.addSpheres(spheres);
 		
 		// Add light sources:
 		CutoffSpotlight cutoffSpotlight = new CutoffSpotlight(new Vec(0.0, -1.0, 0.0), 45.0);
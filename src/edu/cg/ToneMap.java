@@ -0,0 +1,77 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import edu.cg.scene.HdrImage;
+import edu.cg.scene.ToneMapper;
+import edu.cg.scene.io.PfmFile;
+
+/**
+ * Maps an HDR image saved by the BatchRenderer (--hdr) into a PNG with another
+ * exposure, gamma or operator, without rendering the scene again.
+ *
+ * Usage: ToneMap [options] image.pfm output.png
+ */
+public class ToneMap {
+	private static final String USAGE = "Usage: ToneMap [options] image" + PfmFile.EXTENSION + " output.png"
+			+ System.lineSeparator() + "  --exposure <stops>      scales the colors by 2^stops (default 0)"
+			+ System.lineSeparator() + "  --gamma <g>             raises the colors to 1/g (default 1)"
+			+ System.lineSeparator() + "  --operator <o>          clip or reinhard (default clip)";
+
+	public static void main(String[] args) {
+		ToneMapper toneMapper;
+		Path input, output;
+		try {
+			double exposure = 0, gamma = 1;
+			ToneMapper.Operator operator = ToneMapper.Operator.CLIP;
+			int i = 0;
+			for (; i + 1 < args.length && args[i].startsWith("--"); i += 2) {
+				String arg = args[i], value = args[i + 1];
+				switch (arg) {
+				case "--exposure":
+					exposure = Double.parseDouble(value);
+					break;
+				case "--gamma":
+					gamma = Double.parseDouble(value);
+					break;
+				case "--operator":
+					operator = ToneMapper.Operator.valueOf(value.toUpperCase());
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				}
+			}
+			if (args.length - i != 2)
+				throw new IllegalArgumentException("Expected an input and an output file");
+			input = Paths.get(args[i]);
+			output = Paths.get(args[i + 1]);
+			toneMapper = new ToneMapper(operator, exposure, gamma);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		try {
+			long start = System.nanoTime();
+			HdrImage hdr = PfmFile.read(input);
+			long loaded = System.nanoTime();
+			BufferedImage img = toneMapper.apply(hdr);
+			long mapped = System.nanoTime();
+			File file = output.toFile();
+			if (!ImageIO.write(img, "png", file))
+				throw new RuntimeException("No PNG writer is available");
+			System.out.println(String.format("%s: %dx%d read in %.3f s, %s in %.3f s, written to %s", input,
+					hdr.width(), hdr.height(), (loaded - start) / 1e9, toneMapper, (mapped - loaded) / 1e9, output));
+		} catch (Exception e) {
+			System.err.println("Couldn't map " + input + System.lineSeparator() + "Exception: " + e);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package edu.cg.algebra;
+
+/**
+ * An axis aligned bounding box.
+ */
+public class BoundingBox {
+	public final double minX, minY, minZ;
+	public final double maxX, maxY, maxZ;
+
+	public BoundingBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+	}
+
+	public BoundingBox(Point min, Point max) {
+		this(min.x, min.y, min.z, max.x, max.y, max.z);
+	}
+
+	public Point min() {
+		return new Point(minX, minY, minZ);
+	}
+
+	public Point max() {
+		return new Point(maxX, maxY, maxZ);
+	}
+
+	public Point center() {
+		return new Point((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2);
+	}
+
+	/**
+	 * Returns the smallest box that contains both this box and the other box.
+	 */
+	public BoundingBox union(BoundingBox other) {
+		return new BoundingBox(Math.min(minX, other.minX), Math.min(minY, other.minY), Math.min(minZ, other.minZ),
+				Math.max(maxX, other.maxX), Math.max(maxY, other.maxY), Math.max(maxZ, other.maxZ));
+	}
+
+	/**
+	 * Returns a copy of this box grown by the given margin on every side.
+	 */
+	public BoundingBox expand(double margin) {
+		return new BoundingBox(minX - margin, minY - margin, minZ - margin, maxX + margin, maxY + margin,
+				maxZ + margin);
+	}
+
+	public double surfaceArea() {
+		double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+
+	/**
+	 * Writes the box as (minX, minY, minZ, maxX, maxY, maxZ) into the given array.
+	 */
+	public void copyTo(double[] dst, int offset) {
+		dst[offset] = minX;
+		dst[offset + 1] = minY;
+		dst[offset + 2] = minZ;
+		dst[offset + 3] = maxX;
+		dst[offset + 4] = maxY;
+		dst[offset + 5] = maxZ;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + min() + ", " + max() + "]";
+	}
+}
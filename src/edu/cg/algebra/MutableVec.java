@@ -0,0 +1,89 @@
+package edu.cg.algebra;
+
+/**
+ * A mutable 3D vector for hot loops. All operations are done in place and
+ * return this vector, so intermediate results don't allocate. The arithmetic
+ * (and its order) is the same as the one of the immutable Vec and Ops, so
+ * results are identical.
+ */
+public class MutableVec {
+	public double x, y, z;
+
+	public MutableVec(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	public MutableVec(Vec v) {
+		this(v.x, v.y, v.z);
+	}
+
+	public MutableVec() {
+		this(0, 0, 0);
+	}
+
+	public MutableVec set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	public MutableVec set(Vec v) {
+		return set(v.x, v.y, v.z);
+	}
+
+	public MutableVec set(MutableVec v) {
+		return set(v.x, v.y, v.z);
+	}
+
+	public MutableVec add(Vec v) {
+		return set(x + v.x, y + v.y, z + v.z);
+	}
+
+	public MutableVec add(MutableVec v) {
+		return set(x + v.x, y + v.y, z + v.z);
+	}
+
+	public MutableVec mult(double a) {
+		return set(a * x, a * y, a * z);
+	}
+
+	public MutableVec mult(Vec v) {
+		return set(x * v.x, y * v.y, z * v.z);
+	}
+
+	public MutableVec neg() {
+		return set(-x, -y, -z);
+	}
+
+	public MutableVec normalize() {
+		return mult(1.0 / norm());
+	}
+
+	public double dot(Vec v) {
+		return x * v.x + y * v.y + z * v.z;
+	}
+
+	public double dot(MutableVec v) {
+		return x * v.x + y * v.y + z * v.z;
+	}
+
+	public double normSqr() {
+		return x * x + y * y + z * z;
+	}
+
+	public double norm() {
+		return Math.sqrt(normSqr());
+	}
+
+	public Vec toVec() {
+		return new Vec(x, y, z);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + x + ", " + y + ", " + z + ")";
+	}
+}
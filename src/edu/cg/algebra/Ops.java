@@ -17,7 +17,7 @@ public class Ops {
 	}
 
 	public static Vec mult(double a, Vec v) {
-		return mult(new Vec(a), v);
+		return new Vec(a * v.x, a * v.y, a * v.z);
 	}
 
 	public static Vec mult(Vec u, Vec v) {
@@ -25,7 +25,7 @@ public class Ops {
 	}
 
 	public static Point mult(double a, Point p) {
-		return mult(new Point(a), p);
+		return new Point(a * p.x, a * p.y, a * p.z);
 	}
 
 	public static Point mult(Point p1, Point p2) {
@@ -61,7 +61,7 @@ public class Ops {
 	}
 
 	public static Vec neg(Vec v) {
-		return mult(-1, v);
+		return new Vec(-v.x, -v.y, -v.z);
 	}
 
 	public static Vec add(Vec u, Vec v) {
@@ -78,7 +78,7 @@ public class Ops {
 
 	public static Point add(Point p, double t, Vec v) {
 		// returns p + tv;
-		return add(p, mult(t, v));
+		return new Point(p.x + t * v.x, p.y + t * v.y, p.z + t * v.z);
 	}
 
 	public static Vec sub(Point p1, Point p2) {
@@ -94,7 +94,8 @@ public class Ops {
 	}
 
 	public static Vec reflect(Vec u, Vec normal) {
-		return add(u, mult(-2 * dot(u, normal), normal));
+		double a = -2 * dot(u, normal);
+		return new Vec(u.x + a * normal.x, u.y + a * normal.y, u.z + a * normal.z);
 	}
 
 	/**
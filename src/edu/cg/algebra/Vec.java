@@ -75,6 +75,18 @@ public class Vec {
 		return new Color(clip(x), clip(y), clip(z));
 	}
 	
+	/**
+	 * Packs the clipped color into an int in the TYPE_INT_RGB layout (0x00RRGGBB).
+	 * Gives the same channel values as toColor() without allocating a Color.
+	 */
+	public int toRGB() {
+		return toByte(x) << 16 | toByte(y) << 8 | toByte(z);
+	}
+	
+	private static int toByte(double val) {
+		return (int) (clip(val) * 255 + 0.5);
+	}
+	
 	private static float clip(double val) {
 		return (float)Math.min(1, Math.max(0, val));
 	}
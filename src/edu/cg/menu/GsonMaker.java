@@ -17,8 +17,8 @@ import edu.cg.scene.objects.Shape;
 
 public class GsonMaker<T>  implements JsonSerializer<T>, JsonDeserializer<T> {
 
-	private static final String CLASSNAME = "CLASSNAME";
-	private static final String DATA = "DATA";
+	public static final String CLASSNAME = "CLASSNAME";
+	public static final String DATA = "DATA";
 
 	public T deserialize(JsonElement jsonElement, Type type,
 			JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
@@ -52,16 +52,23 @@ public class GsonMaker<T>  implements JsonSerializer<T>, JsonDeserializer<T> {
 	private static class GsonHolder {
 		public static Gson gson;
 		static {
-			GsonBuilder gsonBuilder = new GsonBuilder();
-			gsonBuilder
-			.setPrettyPrinting()
-			.registerTypeAdapter(Light.class, new GsonMaker<Light>())
-			.registerTypeAdapter(Shape.class, new GsonMaker<Shape>());
-
-			gson = gsonBuilder.create();
+			gson = newBuilder().create();
 		}
 	}
 	
+	/**
+	 * Returns a new builder with the settings of the shared instance, for Gson
+	 * objects that need some more settings.
+	 */
+	public static GsonBuilder newBuilder() {
+		GsonBuilder gsonBuilder = new GsonBuilder();
+		gsonBuilder
+		.setPrettyPrinting()
+		.registerTypeAdapter(Light.class, new GsonMaker<Light>())
+		.registerTypeAdapter(Shape.class, new GsonMaker<Shape>());
+		return gsonBuilder;
+	}
+	
 	public static Gson getInstance() {
 		return GsonHolder.gson;
 	}
@@ -2,11 +2,15 @@ package edu.cg.menu;
 
 /*
  * This class displays an image in a new window and allows to save it as a PNG file.
+ * While the image is being rendered the window shows it progressively and allows to cancel the rendering.
  */
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
 import java.awt.Graphics;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -19,10 +23,17 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
+import edu.cg.scene.Tile;
+
 @SuppressWarnings("serial")
 public class ImageWindow extends JFrame {
 	private MenuWindow menuWindow;
 	private BufferedImage img;
+	private JButton btnSaveAs;
+	private JButton btnCancel;
+	private JPanel panelImage;
+	// Cancels the rendering of the image, null when the image is not being rendered.
+	private volatile Runnable cancelRendering = null;
 
 	/**
 	 * Create the window.
@@ -39,7 +50,7 @@ public class ImageWindow extends JFrame {
 		setContentPane(contentPane);
 		contentPane.setLayout(new BorderLayout(0, 0));
 		
-		JButton btnSaveAs = new JButton("Save as...");
+		btnSaveAs = new JButton("Save as...");
 		btnSaveAs.addActionListener(e -> {
 			JFileChooser fileChooser = new JFileChooser("outputs");
 			fileChooser.setSelectedFile(new File(title + ".png"));
@@ -47,14 +58,63 @@ public class ImageWindow extends JFrame {
 			if (ret == JFileChooser.APPROVE_OPTION)
 				save(fileChooser.getSelectedFile());
 		});
-		contentPane.add(btnSaveAs, BorderLayout.NORTH);
 		
-		JPanel panelImage = new ImagePanel();
+		btnCancel = new JButton("Cancel rendering");
+		btnCancel.setEnabled(false);
+		btnCancel.addActionListener(e -> cancelRendering());
+		
+		JPanel panelButtons = new JPanel();
+		panelButtons.setLayout(new FlowLayout(FlowLayout.CENTER, 5, 0));
+		panelButtons.add(btnSaveAs);
+		panelButtons.add(btnCancel);
+		contentPane.add(panelButtons, BorderLayout.NORTH);
+		
+		panelImage = new ImagePanel();
 		contentPane.add(panelImage, BorderLayout.CENTER);
 		
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				cancelRendering();
+			}
+		});
+		
 		pack();
 	}
 	
+	/**
+	 * Marks the image as being rendered: saving is disabled until renderFinished() is called.
+	 * 
+	 * @param cancel - cancels the rendering. Called when the user cancels or closes the window.
+	 */
+	public void renderStarted(Runnable cancel) {
+		cancelRendering = cancel;
+		btnSaveAs.setEnabled(false);
+		btnCancel.setEnabled(true);
+	}
+	
+	/**
+	 * Repaints the tile of the image. May be called from any thread.
+	 */
+	public void tileRendered(Tile tile) {
+		panelImage.repaint(tile.x(), tile.y(), tile.width(), tile.height());
+	}
+	
+	public void renderFinished() {
+		cancelRendering = null;
+		btnSaveAs.setEnabled(true);
+		btnCancel.setEnabled(false);
+		panelImage.repaint();
+	}
+	
+	private void cancelRendering() {
+		Runnable cancel = cancelRendering;
+		if (cancel != null) {
+			btnCancel.setEnabled(false);
+			cancel.run();
+		}
+	}
+	
 	private class ImagePanel extends JPanel {
 		public ImagePanel() {
 			setPreferredSize(new Dimension(img.getWidth(), img.getHeight()));
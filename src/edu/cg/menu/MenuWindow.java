@@ -3,17 +3,23 @@ package edu.cg.menu;
 import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
 import edu.cg.Logger;
 import edu.cg.menu.components.ScenesCreator;
 import edu.cg.menu.components.ScenesPicker;
+import edu.cg.scene.RenderExecutor;
 import edu.cg.scene.Scene;
+import edu.cg.scene.acceleration.AccelerationCache;
 import edu.cg.menu.components.LogField;
 import edu.cg.menu.components.RenderingParametersSelector;
 
@@ -21,6 +27,11 @@ import edu.cg.menu.components.RenderingParametersSelector;
 public class MenuWindow extends JFrame implements Logger {
 	// MARK: fields
 	private Scene scene = null;
+	// Whether a render is running, on the event thread. Only one render runs at a
+	// time, as a scene keeps the state of its render.
+	private boolean rendering = false;
+	// The BVHs of the scenes are kept across runs.
+	private final AccelerationCache cache = AccelerationCache.inDefaultDirectory();
 
 	// MARK: GUI fields
 	private ScenesPicker scenesPicker;
@@ -58,13 +69,9 @@ public class MenuWindow extends JFrame implements Logger {
 				int width = renderingParametersSelector.width();
 				int height = renderingParametersSelector.height();
 				double viewAngle = renderingParametersSelector.viewAngle();
-				BufferedImage img = scene.render(width, height, viewAngle, MenuWindow.this);
-				present(img);
+				render(width, height, viewAngle);
 			} catch (Exception ex) {
-				String msg = "Couldn't render " + scene.getName() + System.lineSeparator() + "Exception message: "
-						+ ex.getMessage();
-				log(msg);
-				JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE);
+				renderFailed(scene, ex);
 			}
 		});
 
@@ -89,8 +96,8 @@ public class MenuWindow extends JFrame implements Logger {
 	}
 
 	public void setScene(Scene scene) {
-		this.scene = scene;
-		btnRender.setEnabled(true);
+		this.scene = scene.initAccelerationCache(cache);
+		btnRender.setEnabled(!rendering);
 		renderingParametersSelector.writeParameters(scene);
 		log(scene.getName() + " has been selected.");
 	}
@@ -99,9 +106,69 @@ public class MenuWindow extends JFrame implements Logger {
 		new ImageWindow(img, scene.getName(), this).setVisible(true);
 	}
 
+	/**
+	 * Renders the scene progressively on a background thread. The image window is
+	 * presented right away and shows the tiles as they are rendered.
+	 */
+	private void render(int width, int height, double viewAngle) {
+		Scene scene = this.scene;
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		ImageWindow imageWindow = new ImageWindow(img, scene.getName(), this);
+
+		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws Exception {
+				try {
+					// Renders share the threads of the process-wide pool.
+					scene.render(img, viewAngle, RenderExecutor.shared(), true, imageWindow::tileRendered,
+							MenuWindow.this);
+				} finally {
+					// done() is called as soon as the worker is cancelled, while the render
+					// is still stopping, so the next render is allowed only from here.
+					SwingUtilities.invokeLater(() -> {
+						rendering = false;
+						btnRender.setEnabled(true);
+					});
+				}
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				imageWindow.renderFinished();
+				try {
+					get();
+				} catch (CancellationException ex) {
+					log("Rendering of " + scene.getName() + " has been cancelled.");
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					renderFailed(scene, ex.getCause());
+				}
+			}
+		};
+
+		rendering = true;
+		btnRender.setEnabled(false);
+		imageWindow.renderStarted(() -> worker.cancel(true));
+		imageWindow.setVisible(true);
+		worker.execute();
+	}
+
+	private void renderFailed(Scene scene, Throwable ex) {
+		String msg = "Couldn't render " + scene.getName() + System.lineSeparator() + "Exception message: "
+				+ ex.getMessage();
+		log(msg);
+		JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE);
+	}
+
 	// MARK: Logger
 	@Override
 	public void log(String s) {
-		logField.log(s);
+		// Rendering logs from background threads.
+		if (SwingUtilities.isEventDispatchThread())
+			logField.log(s);
+		else
+			SwingUtilities.invokeLater(() -> logField.log(s));
 	}
 }
@@ -0,0 +1,110 @@
+package edu.cg.scene;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the tasks of a render on a fork/join pool. The list of tiles is split in
+ * halves recursively, so every thread starts with a contiguous part of the image
+ * and idle threads steal the other halves of the busy ones.
+ */
+class ForkJoinRenderExecutor implements RenderExecutor {
+	// The pool of RenderExecutor.shared(), created when it's first used.
+	static class Shared {
+		static final RenderExecutor INSTANCE = new ForkJoinRenderExecutor(
+				Math.max(2, Runtime.getRuntime().availableProcessors())) {
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	private final ForkJoinPool pool;
+
+	ForkJoinRenderExecutor(int nThreads) {
+		// The worker threads of a fork/join pool are daemon threads.
+		pool = new ForkJoinPool(nThreads, forkJoinPool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("render-fj-" + thread.getPoolIndex());
+			return thread;
+		}, null, false);
+	}
+
+	// Renders the tiles [from, to) of a render.
+	private static class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<? extends Runnable> tasks;
+		private final int from, to;
+		private final Run run;
+
+		Split(List<? extends Runnable> tasks, int from, int to, Run run) {
+			this.tasks = tasks;
+			this.from = from;
+			this.to = to;
+			this.run = run;
+		}
+
+		@Override
+		protected void compute() {
+			// The tiles that haven't started when the render got cancelled are skipped.
+			if (run.cancelled)
+				return;
+			if (to - from == 1) {
+				try {
+					tasks.get(from).run();
+				} catch (Throwable e) {
+					run.cancelled = true;
+					throw e;
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			Split left = new Split(tasks, from, middle, run), right = new Split(tasks, middle, to, run);
+			right.fork();
+			try {
+				left.invoke();
+			} finally {
+				// Unlike invokeAll, waits for the other half even if this one failed, so
+				// no tile is still running when runAll returns.
+				right.quietlyJoin();
+			}
+			right.join();
+		}
+	}
+
+	// The state of a call to runAll, shared by its splits.
+	private static class Run {
+		volatile boolean cancelled = false;
+	}
+
+	@Override
+	public void runAll(List<? extends Runnable> tasks) throws InterruptedException, ExecutionException {
+		if (tasks.isEmpty())
+			return;
+		Run run = new Run();
+		Split root = new Split(tasks, 0, tasks.size(), run);
+		pool.execute(root);
+		try {
+			root.get();
+		} catch (InterruptedException e) {
+			run.cancelled = true;
+			// The tiles that are running aren't interrupted, they are waited for.
+			root.quietlyJoin();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "a fork/join pool of " + pool.getParallelism() + " threads";
+	}
+}
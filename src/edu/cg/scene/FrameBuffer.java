@@ -0,0 +1,59 @@
+package edu.cg.scene;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * The pixels a render writes its tiles into, packed in the TYPE_INT_RGB layout.
+ * Tiles are written concurrently by the render threads, each into its own
+ * rectangle.
+ *
+ * An image on the heap is wrapped by of(img). Images too big for the heap are
+ * rendered into a MappedFrameBuffer.
+ */
+public interface FrameBuffer {
+	int width();
+
+	int height();
+
+	/**
+	 * Writes a rectangle of pixels.
+	 *
+	 * @param rgb - a row-major buffer of (at least) width * height pixels.
+	 */
+	void write(int x, int y, int width, int height, int[] rgb);
+
+	/**
+	 * Reads a rectangle of pixels into a row-major buffer of (at least) width *
+	 * height pixels.
+	 */
+	void read(int x, int y, int width, int height, int[] rgb);
+
+	/**
+	 * Returns a framebuffer over the raster of the image (TYPE_INT_RGB).
+	 */
+	static FrameBuffer of(BufferedImage img) {
+		WritableRaster raster = img.getRaster();
+		return new FrameBuffer() {
+			@Override
+			public int width() {
+				return img.getWidth();
+			}
+
+			@Override
+			public int height() {
+				return img.getHeight();
+			}
+
+			@Override
+			public void write(int x, int y, int width, int height, int[] rgb) {
+				raster.setDataElements(x, y, width, height, rgb);
+			}
+
+			@Override
+			public void read(int x, int y, int width, int height, int[] rgb) {
+				raster.getDataElements(x, y, width, height, rgb);
+			}
+		};
+	}
+}
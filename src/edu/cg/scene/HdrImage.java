@@ -0,0 +1,74 @@
+package edu.cg.scene;
+
+/**
+ * The linear colors of the pixels of a render, before they are clipped, as 3
+ * floats (red, green, blue) per pixel in row-major order. A ToneMapper turns
+ * it into an image, so the exposure or the gamma of a render can be changed
+ * without tracing it again.
+ *
+ * Tiles are written concurrently by the render threads, each into its own
+ * rectangle.
+ */
+public class HdrImage {
+	private final int width, height;
+	private final float[] rgb;
+
+	public HdrImage(int width, int height) {
+		this(width, height, new float[length(width, height)]);
+	}
+
+	/**
+	 * Wraps the colors (3 per pixel, not copied).
+	 */
+	public HdrImage(int width, int height, float[] rgb) {
+		if (rgb.length != length(width, height))
+			throw new IllegalArgumentException("An image of " + width + "x" + height + " has "
+					+ length(width, height) + " channels, not " + rgb.length);
+		this.width = width;
+		this.height = height;
+		this.rgb = rgb;
+	}
+
+	private static int length(int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("The size of an image must be positive");
+		long ret = 3L * width * height;
+		if (ret > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("An HDR image of " + width + "x" + height + " is too big");
+		return (int) ret;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns the colors (not copied), 3 per pixel in row-major order.
+	 */
+	public float[] data() {
+		return rgb;
+	}
+
+	/**
+	 * Writes the colors of a rectangle of pixels.
+	 *
+	 * @param src - row-major, 3 floats per pixel.
+	 */
+	public void write(int x, int y, int width, int height, float[] src) {
+		for (int row = 0; row < height; ++row)
+			System.arraycopy(src, 3 * row * width, rgb, 3 * ((y + row) * this.width + x), 3 * width);
+	}
+
+	/**
+	 * Reads the colors of a rectangle of pixels into dst (row-major, 3 floats per
+	 * pixel).
+	 */
+	public void read(int x, int y, int width, int height, float[] dst) {
+		for (int row = 0; row < height; ++row)
+			System.arraycopy(rgb, 3 * ((y + row) * this.width + x), dst, 3 * row * width, 3 * width);
+	}
+}
@@ -0,0 +1,141 @@
+package edu.cg.scene;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A framebuffer in a memory mapped file, so the size of the image is limited
+ * by the disk and not by the heap. The pixels are stored row by row, 4 bytes
+ * each in the native order, and the file is mapped in segments of whole rows
+ * (a single mapping is limited to 2 GB).
+ *
+ * The pages of the file are cached by the operating system, which writes them
+ * to the disk when memory is short.
+ */
+public class MappedFrameBuffer implements FrameBuffer, Closeable {
+	// The largest segment, in bytes.
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final Path file;
+	private final boolean temporary;
+	private final FileChannel channel;
+	private final int width, height;
+	private final int rowsPerSegment;
+	private final IntBuffer[] segments;
+
+	/**
+	 * Creates a framebuffer of the given size in the file, replacing it if it
+	 * exists. The file is kept when the framebuffer is closed.
+	 */
+	public MappedFrameBuffer(Path file, int width, int height) throws IOException {
+		this(file, width, height, false);
+	}
+
+	private MappedFrameBuffer(Path file, int width, int height, boolean temporary) throws IOException {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("The size of a framebuffer must be positive");
+		this.file = file;
+		this.temporary = temporary;
+		this.width = width;
+		this.height = height;
+		rowsPerSegment = (int) Math.max(1, Math.min(height, SEGMENT_SIZE / (4L * width)));
+		segments = new IntBuffer[(height + rowsPerSegment - 1) / rowsPerSegment];
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			for (int i = 0; i < segments.length; ++i) {
+				int rows = Math.min(rowsPerSegment, height - i * rowsPerSegment);
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, 4L * width * i * rowsPerSegment,
+						4L * width * rows).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a framebuffer of the given size in a new file in the directory,
+	 * which is deleted when the framebuffer is closed.
+	 */
+	public static MappedFrameBuffer createTemp(Path directory, int width, int height) throws IOException {
+		Path file = Files.createTempFile(directory, "framebuffer", ".rgb");
+		try {
+			return new MappedFrameBuffer(file, width, height, true);
+		} catch (IOException | RuntimeException e) {
+			delete(file);
+			throw e;
+		}
+	}
+
+	public Path file() {
+		return file;
+	}
+
+	@Override
+	public int width() {
+		return width;
+	}
+
+	@Override
+	public int height() {
+		return height;
+	}
+
+	@Override
+	public void write(int x, int y, int width, int height, int[] rgb) {
+		for (int row = 0; row < height; ++row)
+			rowBuffer(x, y + row, width).put(rgb, row * width, width);
+	}
+
+	@Override
+	public void read(int x, int y, int width, int height, int[] rgb) {
+		for (int row = 0; row < height; ++row)
+			rowBuffer(x, y + row, width).get(rgb, row * width, width);
+	}
+
+	// A buffer positioned at the pixel, of its own so threads don't share the
+	// position.
+	private IntBuffer rowBuffer(int x, int y, int length) {
+		if (x < 0 || length < 0 || x + length > width || y < 0 || y >= height)
+			throw new IndexOutOfBoundsException(
+					length + " pixels at (" + x + ", " + y + ") are out of the framebuffer");
+		IntBuffer ret = segments[y / rowsPerSegment].duplicate();
+		ret.position((y % rowsPerSegment) * width + x);
+		return ret;
+	}
+
+	/**
+	 * Closes the file, and deletes it if it is temporary. The framebuffer must
+	 * not be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		// The mappings are only released once their buffers are collected.
+		Arrays.fill(segments, null);
+		channel.close();
+		if (temporary)
+			delete(file);
+	}
+
+	/**
+	 * Deletes the file, or deletes it when the JVM exits if it can't be deleted
+	 * yet. Some systems (e.g. Windows) don't delete a file that is still mapped,
+	 * and the mappings are released by the garbage collector.
+	 */
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			file.toFile().deleteOnExit();
+		}
+	}
+}
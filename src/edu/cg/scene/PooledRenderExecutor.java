@@ -0,0 +1,91 @@
+package edu.cg.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the tasks of a render on an ExecutorService, one task per tile.
+ */
+class PooledRenderExecutor implements RenderExecutor {
+	private final ExecutorService executor;
+	private final String description;
+
+	PooledRenderExecutor(ExecutorService executor, String description) {
+		this.executor = executor;
+		this.description = description;
+	}
+
+	// Counts the running tasks of a call to runAll, so it can wait for them when
+	// invokeAll returns early.
+	private static class Run {
+		private int running = 0;
+		private boolean stopped = false;
+
+		synchronized boolean start() {
+			if (stopped)
+				return false;
+			++running;
+			return true;
+		}
+
+		synchronized void finish() {
+			if (--running == 0)
+				notifyAll();
+		}
+
+		// Keeps the tasks that haven't started from starting, and waits for the
+		// others (uninterruptibly, the interrupt is kept).
+		synchronized void stop() {
+			stopped = true;
+			boolean interrupted = false;
+			while (running > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void runAll(List<? extends Runnable> tasks) throws InterruptedException, ExecutionException {
+		Run run = new Run();
+		List<Callable<Object>> callables = new ArrayList<>(tasks.size());
+		for (Runnable task : tasks)
+			callables.add(Executors.callable(() -> {
+				if (!run.start())
+					return;
+				try {
+					task.run();
+				} finally {
+					run.finish();
+				}
+			}));
+		try {
+			// invokeAll cancels the tasks that haven't completed if it's interrupted,
+			// but returns without waiting for the running ones.
+			for (Future<Object> future : executor.invokeAll(callables))
+				future.get();
+		} finally {
+			run.stop();
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,57 @@
+package edu.cg.scene;
+
+import java.util.Arrays;
+
+import edu.cg.algebra.Ray;
+
+/**
+ * The secondary rays that are still to be traced for a pixel sample, each with
+ * the weight of its path (the product of the reflection / refraction
+ * intensities along it) and its recursion level. Belongs to a render context
+ * and is reused for all its samples.
+ */
+class RayStack {
+	private Ray[] rays;
+	private double[] weights;
+	private int[] levels;
+	private int size = 0;
+
+	RayStack(int capacity) {
+		rays = new Ray[capacity];
+		weights = new double[capacity];
+		levels = new int[capacity];
+	}
+
+	void push(Ray ray, double weight, int level) {
+		if (size == rays.length) {
+			rays = Arrays.copyOf(rays, 2 * size);
+			weights = Arrays.copyOf(weights, 2 * size);
+			levels = Arrays.copyOf(levels, 2 * size);
+		}
+		rays[size] = ray;
+		weights[size] = weight;
+		levels[size] = level;
+		size++;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	// The accessors of the top entry.
+	Ray ray() {
+		return rays[size - 1];
+	}
+
+	double weight() {
+		return weights[size - 1];
+	}
+
+	int level() {
+		return levels[size - 1];
+	}
+
+	void pop() {
+		rays[--size] = null;
+	}
+}
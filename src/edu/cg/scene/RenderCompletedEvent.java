@@ -0,0 +1,53 @@
+package edu.cg.scene;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event with the totals of a render. Only recorded when a flight
+ * recording is running.
+ */
+@Name("edu.cg.RenderCompleted")
+@Label("Render Completed")
+@Category("Ray Tracing")
+@Description("A scene has been rendered")
+class RenderCompletedEvent extends Event {
+	@Label("Scene")
+	String scene;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Primary Rays")
+	long primaryRays;
+
+	@Label("Shadow Rays")
+	long shadowRays;
+
+	@Label("Reflection Rays")
+	long reflectionRays;
+
+	@Label("Skipped Rays")
+	long skippedRays;
+
+	@Label("Culled Shadow Rays")
+	long culledShadowRays;
+
+	@Label("Occluder Cache Hits")
+	long occluderCacheHits;
+
+	@Label("Occluder Cache Lookups")
+	long occluderCacheLookups;
+
+	@Label("Node Visits")
+	long nodeVisits;
+
+	@Label("Rays Per Second")
+	double raysPerSecond;
+}
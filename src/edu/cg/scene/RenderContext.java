@@ -0,0 +1,85 @@
+package edu.cg.scene;
+
+import edu.cg.algebra.Ray;
+import edu.cg.scene.acceleration.Accelerator;
+import edu.cg.scene.acceleration.RayPacket;
+import edu.cg.scene.acceleration.TraversalStats;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * The state of a render worker during a render (see RenderContextPool). It's
+ * used by a single tile at a time, so the counters are plain fields; they are
+ * merged into the RenderStats when rendering is done.
+ */
+class RenderContext {
+	long primaryRays = 0;
+	long shadowRays = 0;
+	// Shadow rays that were not traced as their light can't contribute.
+	long culledShadowRays = 0;
+	long reflectionRays = 0;
+	// Secondary rays that were not traced as their contribution is too small.
+	long skippedRays = 0;
+	// Shadow rays that found an occluder in the cache, and that looked for one.
+	long occluderCacheHits = 0;
+	long occluderCacheLookups = 0;
+	long tiles = 0;
+	final long[] tileTimeHistogram = new long[RenderStats.HISTOGRAM_BUCKETS];
+
+	private final Accelerator accelerator;
+	final TraversalStats traversal;
+	// The surfaces of the scene, counting the work into the traversal stats.
+	final Intersectable surfaces;
+	// Reused for the primary rays of every block of pixels.
+	final RayPacket packet = new RayPacket(Scene.PACKET_BLOCK * Scene.PACKET_BLOCK);
+	// The secondary rays of the sample that is shaded.
+	final RayStack rays = new RayStack(16);
+	// The directions of the primary rays of a packet, see PinholeCamera.rayDirections.
+	final double[] directions = new double[3 * Scene.PACKET_BLOCK * Scene.PACKET_BLOCK];
+	// The linear colors of the pixels of the tile that is rendered, when the
+	// render keeps an HDR image (3 per pixel, see HdrImage).
+	float[] linearColors = new float[0];
+
+	// Per light: the surface that occluded the last shadow ray to it (null if that
+	// ray wasn't occluded).
+	private final Surface[] lastOccluders;
+
+	RenderContext(Accelerator accelerator, int lights) {
+		this.accelerator = accelerator;
+		traversal = accelerator.newStats();
+		surfaces = accelerator.withStats(traversal);
+		lastOccluders = new Surface[lights];
+	}
+
+	/**
+	 * Checks if the light (the index-th of the scene) is occluded. Shadow rays of
+	 * neighbouring pixels are usually blocked by the same surface, so the occluder
+	 * of the last shadow ray to the light is tried first, and the whole scene is
+	 * only searched if it doesn't block the ray.
+	 */
+	boolean isOccluded(Light light, int index, Ray rayToLight) {
+		Surface last = lastOccluders[index];
+		if (last != null) {
+			occluderCacheLookups++;
+			if (light.isOccludedBy(last, rayToLight)) {
+				occluderCacheHits++;
+				return true;
+			}
+		}
+		// A lit point forgets the occluder, as its neighbours are probably lit too.
+		Surface occluder = accelerator.occluder(rayToLight, light.distance(rayToLight.source()), traversal);
+		lastOccluders[index] = occluder;
+		return occluder != null;
+	}
+
+	void initLinearColors(int pixels) {
+		if (linearColors.length < 3 * pixels)
+			linearColors = new float[3 * pixels];
+	}
+
+	void tileRendered(long nanos) {
+		tiles++;
+		tileTimeHistogram[RenderStats.histogramBucket(nanos)]++;
+	}
+}
@@ -0,0 +1,50 @@
+package edu.cg.scene;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import edu.cg.scene.acceleration.Accelerator;
+
+/**
+ * The render contexts of one render. Every tile borrows a context for as long
+ * as it is rendered and gives it back when it's done, so there are only as
+ * many contexts as tiles rendered at the same time (about the parallelism of
+ * the executor), whichever threads render them. With a virtual thread per
+ * tile the contexts are still reused from tile to tile, and nothing is left
+ * behind in the threads of a shared executor once the render is over.
+ */
+class RenderContextPool {
+	private final Accelerator accelerator;
+	private final int lights;
+	// The last returned context is borrowed first, as its caches are the warmest.
+	private final Deque<RenderContext> idle = new ArrayDeque<>();
+	private final List<RenderContext> contexts = new ArrayList<>();
+
+	RenderContextPool(Accelerator accelerator, int lights) {
+		this.accelerator = accelerator;
+		this.lights = lights;
+	}
+
+	synchronized RenderContext borrow() {
+		RenderContext context = idle.pollFirst();
+		if (context == null) {
+			context = new RenderContext(accelerator, lights);
+			contexts.add(context);
+		}
+		return context;
+	}
+
+	synchronized void giveBack(RenderContext context) {
+		idle.addFirst(context);
+	}
+
+	/**
+	 * Returns all the contexts created by the pool. Their counters can be read
+	 * once no tile is rendered anymore.
+	 */
+	synchronized List<RenderContext> contexts() {
+		return new ArrayList<>(contexts);
+	}
+}
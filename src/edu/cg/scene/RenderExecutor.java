@@ -0,0 +1,108 @@
+package edu.cg.scene;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tile tasks of a render. An executor may be reused for any number of
+ * renders (one at a time), so a service that renders many scenes pays for
+ * starting its threads only once; closing it stops its threads.
+ *
+ * The implementations are a fixed thread pool, a fork/join pool that splits the
+ * tiles recursively and balances them by work stealing, and a virtual thread
+ * per tile (Java 21 or later). See RenderExecutorType.
+ */
+public interface RenderExecutor extends AutoCloseable {
+	/**
+	 * Runs all the tasks and blocks until they are done. If the calling thread is
+	 * interrupted the tasks that haven't started are cancelled, and an
+	 * InterruptedException is thrown once the running ones are done. Either way
+	 * no task is running when it returns.
+	 *
+	 * @throws ExecutionException if a task failed (with its exception as the
+	 *                            cause). The tasks that haven't started by then
+	 *                            may be skipped.
+	 */
+	void runAll(List<? extends Runnable> tasks) throws InterruptedException, ExecutionException;
+
+	/**
+	 * Stops the threads of the executor, interrupting the running tasks.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Returns an executor with a fixed pool of nThreads threads.
+	 */
+	static RenderExecutor fixed(int nThreads) {
+		if (nThreads <= 0)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		return new PooledRenderExecutor(Executors.newFixedThreadPool(nThreads, daemonThreads("render-")),
+				"a fixed pool of " + nThreads + " threads");
+	}
+
+	/**
+	 * Returns an executor with a fork/join pool of nThreads threads.
+	 */
+	static RenderExecutor forkJoin(int nThreads) {
+		if (nThreads <= 0)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		return new ForkJoinRenderExecutor(nThreads);
+	}
+
+	/**
+	 * Returns an executor that starts a virtual thread for every tile. The
+	 * number of carrier threads is chosen by the JDK (see the system property
+	 * jdk.virtualThreadScheduler.parallelism).
+	 *
+	 * @throws UnsupportedOperationException if the JDK has no virtual threads.
+	 */
+	static RenderExecutor virtualThreads() {
+		try {
+			// Looked up at runtime, as the project is built for Java 11.
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			return new PooledRenderExecutor(executor, "a virtual thread per tile");
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+		}
+	}
+
+	/**
+	 * Returns an executor that runs the tasks on the given executor service.
+	 * Closing it doesn't shut the executor service down.
+	 */
+	static RenderExecutor of(ExecutorService executor) {
+		return new PooledRenderExecutor(executor, executor.toString()) {
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Returns a fork/join executor that is shared by the whole process, with one
+	 * thread per processor (and at least 2). It is created on first use and
+	 * closing it does nothing.
+	 */
+	static RenderExecutor shared() {
+		return ForkJoinRenderExecutor.Shared.INSTANCE;
+	}
+
+	/**
+	 * Creates daemon threads named by the prefix and a counter, so an executor
+	 * that is left open doesn't keep the process alive.
+	 */
+	static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
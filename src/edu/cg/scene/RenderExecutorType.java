@@ -0,0 +1,24 @@
+package edu.cg.scene;
+
+/**
+ * The kinds of render executors.
+ */
+public enum RenderExecutorType {
+	// A fixed thread pool, one task per tile.
+	FIXED,
+	// A fork/join pool that splits the tiles recursively.
+	FORK_JOIN,
+	// A virtual thread per tile (Java 21 or later), the thread count is ignored.
+	VIRTUAL;
+
+	public RenderExecutor create(int nThreads) {
+		switch (this) {
+		case FORK_JOIN:
+			return RenderExecutor.forkJoin(nThreads);
+		case VIRTUAL:
+			return RenderExecutor.virtualThreads();
+		default:
+			return RenderExecutor.fixed(nThreads);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package edu.cg.scene;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics of a single render: ray counts, intersection tests per shape type,
+ * node visits of the acceleration structure (BVH nodes or grid cells) and a
+ * histogram of the tile render times.
+ * 
+ * The counters are collected per render context (see RenderContext) and merged
+ * into this object when rendering is done.
+ */
+public class RenderStats {
+	// Bucket i of the histogram counts the tiles that took [2^i, 2^(i+1)) microseconds
+	// (bucket 0 also counts the faster ones).
+	public static final int HISTOGRAM_BUCKETS = 32;
+
+	private final String sceneName;
+	private final int width;
+	private final int height;
+	private long renderNanos = 0;
+
+	private long primaryRays = 0;
+	private long shadowRays = 0;
+	private long reflectionRays = 0;
+	private long skippedRays = 0;
+	private long culledShadowRays = 0;
+	private long occluderCacheHits = 0;
+	private long occluderCacheLookups = 0;
+	private long nodeVisits = 0;
+	private final Map<String, Long> intersectionTests = new LinkedHashMap<>();
+	private long tiles = 0;
+	private final long[] tileTimeHistogram = new long[HISTOGRAM_BUCKETS];
+
+	RenderStats(String sceneName, int width, int height) {
+		this.sceneName = sceneName;
+		this.width = width;
+		this.height = height;
+	}
+
+	static int histogramBucket(long nanos) {
+		long micros = nanos / 1000;
+		int bucket = micros <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+		return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+	}
+
+	/**
+	 * Adds the counters of a render context.
+	 */
+	void add(RenderContext context, String[] shapeTypeNames) {
+		primaryRays += context.primaryRays;
+		shadowRays += context.shadowRays;
+		reflectionRays += context.reflectionRays;
+		skippedRays += context.skippedRays;
+		culledShadowRays += context.culledShadowRays;
+		occluderCacheHits += context.occluderCacheHits;
+		occluderCacheLookups += context.occluderCacheLookups;
+		nodeVisits += context.traversal.nodeVisits;
+		for (int i = 0; i < shapeTypeNames.length; ++i)
+			intersectionTests.merge(shapeTypeNames[i], context.traversal.intersectionTests[i], Long::sum);
+		tiles += context.tiles;
+		for (int i = 0; i < HISTOGRAM_BUCKETS; ++i)
+			tileTimeHistogram[i] += context.tileTimeHistogram[i];
+	}
+
+	void setRenderNanos(long renderNanos) {
+		this.renderNanos = renderNanos;
+	}
+
+	// MARK: getters
+	public String getSceneName() {
+		return sceneName;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public long getRenderNanos() {
+		return renderNanos;
+	}
+
+	public double getRenderSeconds() {
+		return renderNanos / 1e9;
+	}
+
+	public long getPrimaryRays() {
+		return primaryRays;
+	}
+
+	public long getShadowRays() {
+		return shadowRays;
+	}
+
+	public long getReflectionRays() {
+		return reflectionRays;
+	}
+
+	/**
+	 * Returns the number of secondary rays that were not traced because the
+	 * weight of their path is at or below the contribution threshold of the
+	 * scene.
+	 */
+	public long getSkippedRays() {
+		return skippedRays;
+	}
+
+	/**
+	 * Returns the number of shadow rays that were not traced because their light
+	 * can't contribute (see Scene.shade).
+	 */
+	public long getCulledShadowRays() {
+		return culledShadowRays;
+	}
+
+	/**
+	 * Returns the number of shadow rays that were blocked by the cached last
+	 * occluder of their light.
+	 */
+	public long getOccluderCacheHits() {
+		return occluderCacheHits;
+	}
+
+	/**
+	 * Returns the number of shadow rays that were tested against a cached last
+	 * occluder.
+	 */
+	public long getOccluderCacheLookups() {
+		return occluderCacheLookups;
+	}
+
+	public double getOccluderCacheHitRate() {
+		return occluderCacheLookups == 0 ? 0 : (double) occluderCacheHits / occluderCacheLookups;
+	}
+
+	public long getTotalRays() {
+		return primaryRays + shadowRays + reflectionRays;
+	}
+
+	public double getRaysPerSecond() {
+		return renderNanos == 0 ? 0 : getTotalRays() / getRenderSeconds();
+	}
+
+	public long getNodeVisits() {
+		return nodeVisits;
+	}
+
+	/**
+	 * Returns the number of ray-shape intersection tests per shape type (the
+	 * simple class name of the shape).
+	 */
+	public Map<String, Long> getIntersectionTests() {
+		return Collections.unmodifiableMap(intersectionTests);
+	}
+
+	public long getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * Returns the tile render time histogram: bucket i counts the tiles that took
+	 * [2^i, 2^(i+1)) microseconds.
+	 */
+	public long[] getTileTimeHistogram() {
+		return tileTimeHistogram.clone();
+	}
+
+	@Override
+	public String toString() {
+		String endl = System.lineSeparator();
+		StringBuilder histogram = new StringBuilder();
+		for (int i = 0; i < HISTOGRAM_BUCKETS; ++i)
+			if (tileTimeHistogram[i] > 0)
+				histogram.append(histogram.length() == 0 ? "" : ", ").append("<").append(formatMicros(2L << i))
+						.append(": ").append(tileTimeHistogram[i]);
+
+		return "Render stats of " + sceneName + " (" + width + "x" + height + "):" + endl
+				+ String.format("Rays: %d (primary %d, shadow %d, reflection %d) in %.3f s, %.0f rays/s",
+						getTotalRays(), primaryRays, shadowRays, reflectionRays, getRenderSeconds(),
+						getRaysPerSecond())
+				+ endl + "Skipped secondary rays: " + skippedRays + ", culled shadow rays: " + culledShadowRays
+				+ endl + String.format("Occluder cache: %d hits of %d lookups (%.1f%%)", occluderCacheHits,
+						occluderCacheLookups, 100 * getOccluderCacheHitRate())
+				+ endl + "Intersection tests: " + intersectionTests + endl + "Node visits: " + nodeVisits
+				+ endl + "Tiles: " + tiles + " (" + histogram + ")";
+	}
+
+	private static String formatMicros(long micros) {
+		return micros < 1000 ? micros + "us" : (micros < 1000000 ? micros / 1000 + "ms" : micros / 1000000 + "s");
+	}
+}
@@ -1,27 +1,40 @@
 package edu.cg.scene;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import edu.cg.Logger;
 import edu.cg.UnimplementedMethodException;
 import edu.cg.algebra.*;
+import edu.cg.scene.acceleration.AccelerationCache;
+import edu.cg.scene.acceleration.Accelerator;
+import edu.cg.scene.acceleration.AcceleratorType;
+import edu.cg.scene.acceleration.RayPacket;
 import edu.cg.scene.camera.PinholeCamera;
 import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.objects.SphereSet;
 import edu.cg.scene.objects.Surface;
 
 public class Scene {
 	private String name = "scene";
 	private int maxRecursionLevel = 1;
 	private int antiAliasingFactor = 1; // gets the values of 1, 2 and 3
+	// Adaptive anti aliasing shoots one ray per pixel and super-samples only the pixels 
+	// that differ from one of their neighbours by more than the threshold (in any channel, 
+	// in the range [0,1]).
+	private boolean adaptiveAntiAliasing = false;
+	private double antiAliasingThreshold = 0.1;
 	private boolean renderRefarctions = false;
 	private boolean renderReflections = false;
+	private int tileSize = TileScheduler.DEFAULT_TILE_SIZE;
+	// Secondary rays whose path weight is at or below the threshold are not traced
+	// (see shade).
+	private double contributionThreshold = DEFAULT_CONTRIBUTION_THRESHOLD;
+	// The acceleration structure the rays are traced through.
+	private AcceleratorType accelerator = AcceleratorType.BVH;
 
 	private PinholeCamera camera;
 	private Vec ambient = new Vec(1, 1, 1); // white
@@ -52,6 +65,16 @@ public class Scene {
 
 	public Scene addSurface(Surface surface) {
 		surfaces.add(surface);
+		acceleration = null;
+		return this;
+	}
+
+	/**
+	 * Adds all the spheres of the set as surfaces of the scene.
+	 */
+	public Scene addSpheres(SphereSet spheres) {
+		surfaces.addAll(spheres.surfaces());
+		acceleration = null;
 		return this;
 	}
 
@@ -65,6 +88,16 @@ public class Scene {
 		return this;
 	}
 
+	public Scene initAdaptiveAntiAliasing(boolean adaptiveAntiAliasing) {
+		this.adaptiveAntiAliasing = adaptiveAntiAliasing;
+		return this;
+	}
+
+	public Scene initAntiAliasingThreshold(double antiAliasingThreshold) {
+		this.antiAliasingThreshold = antiAliasingThreshold;
+		return this;
+	}
+
 	public Scene initName(String name) {
 		this.name = name;
 		return this;
@@ -80,6 +113,31 @@ public class Scene {
 		return this;
 	}
 
+	public Scene initTileSize(int tileSize) {
+		this.tileSize = tileSize;
+		return this;
+	}
+
+	public Scene initContributionThreshold(double contributionThreshold) {
+		this.contributionThreshold = contributionThreshold;
+		return this;
+	}
+
+	public Scene initAccelerator(AcceleratorType accelerator) {
+		this.accelerator = accelerator;
+		acceleration = null;
+		return this;
+	}
+
+	/**
+	 * Reads the acceleration structure from the cache (and stores it there) when
+	 * it is built, if cache is not null.
+	 */
+	public Scene initAccelerationCache(AccelerationCache cache) {
+		this.accelerationCache = cache;
+		return this;
+	}
+
 	// MARK: getters
 	public String getName() {
 		return name;
@@ -89,6 +147,14 @@ public class Scene {
 		return antiAliasingFactor;
 	}
 
+	public boolean getAdaptiveAntiAliasing() {
+		return adaptiveAntiAliasing;
+	}
+
+	public double getAntiAliasingThreshold() {
+		return antiAliasingThreshold;
+	}
+
 	public int getMaxRecursionLevel() {
 		return maxRecursionLevel;
 	}
@@ -101,140 +167,549 @@ public class Scene {
 		return renderReflections;
 	}
 
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Returns a read only view of the surfaces of the scene, in the order they
+	 * were added.
+	 */
+	public List<Surface> getSurfaces() {
+		return Collections.unmodifiableList(surfaces);
+	}
+
+	public double getContributionThreshold() {
+		return contributionThreshold;
+	}
+
+	public AcceleratorType getAccelerator() {
+		return accelerator;
+	}
+
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator();
 		return "Camera: " + camera + endl + "Ambient: " + ambient + endl + "Background Color: " + backgroundColor + endl
 				+ "Max recursion level: " + maxRecursionLevel + endl + "Anti aliasing factor: " + antiAliasingFactor
+				+ (adaptiveAntiAliasing ? " (adaptive, threshold " + antiAliasingThreshold + ")" : "")
+				+ endl + "Contribution threshold: " + contributionThreshold + endl + "Accelerator: " + accelerator
 				+ endl + "Light sources:" + endl + lightSources + endl + "Surfaces:" + endl + surfaces;
 	}
 
-	private transient ExecutorService executor = null;
+	// The size of the blocks that share one ray in the preview pass of progressive rendering.
+	public static final int PREVIEW_BLOCK = 4;
+	// The size of the blocks of pixels whose primary rays are traced together.
+	public static final int PACKET_BLOCK = 4;
+	// Only rays that can't contribute at all are skipped by default, as any other
+	// threshold may change the image (see shade).
+	public static final double DEFAULT_CONTRIBUTION_THRESHOLD = 0;
+
+	private transient int imgWidth;
+	private transient int imgHeight;
+	// The source of all the primary rays, shared by them.
+	private transient Point cameraPosition = null;
+	// One ray per pixel, from the previous pass of a progressive render.
+	private transient int[] centerSamples = null;
+	// Gets the linear colors of the pixels if not null.
+	private transient HdrImage hdrImage = null;
 	private transient Logger logger = null;
+	// Built lazily before rendering and dropped whenever the surfaces or the
+	// accelerator change.
+	private transient Accelerator acceleration = null;
+	private transient AccelerationCache accelerationCache = null;
+	// The states of the tiles being rendered, created for each render.
+	private transient RenderContextPool renderContexts = null;
 
 	private void initSomeFields(int imgWidth, int imgHeight, Logger logger) {
+		this.imgWidth = imgWidth;
+		this.imgHeight = imgHeight;
 		this.logger = logger;
-			// TODO: initialize your additional field here.
+		if (acceleration == null) {
+			long start = System.nanoTime();
+			acceleration = accelerationCache == null ? accelerator.build(surfaces)
+					: accelerationCache.get(accelerator, surfaces, this.logger);
+			this.logger.log("Built a " + acceleration + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		}
 	}
 
 	public BufferedImage render(int imgWidth, int imgHeight, double viewAngle, Logger logger)
 			throws InterruptedException, ExecutionException, IllegalArgumentException {
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		nThreads = nThreads < 2 ? 2 : nThreads;
+		return render(imgWidth, imgHeight, viewAngle, nThreads, logger);
+	}
+
+	public BufferedImage render(int imgWidth, int imgHeight, double viewAngle, int nThreads, Logger logger)
+			throws InterruptedException, ExecutionException, IllegalArgumentException {
+		BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
+		render(img, viewAngle, nThreads, false, null, logger);
+		return img;
+	}
+
+	/**
+	 * Renders the scene into the given image on a fixed pool of nThreads threads
+	 * that lives for this render only. See render(img, viewAngle, executor,
+	 * progressive, listener, logger).
+	 */
+	public RenderStats render(BufferedImage img, double viewAngle, int nThreads, boolean progressive,
+			TileScheduler.TileListener listener, Logger logger)
+			throws InterruptedException, ExecutionException, IllegalArgumentException {
+		try (RenderExecutor executor = RenderExecutor.fixed(nThreads)) {
+			return render(img, viewAngle, executor, progressive, listener, logger);
+		}
+	}
 
+	/**
+	 * Renders the scene into the given image.
+	 * 
+	 * In progressive mode a coarse preview (one ray per block of PREVIEW_BLOCK x
+	 * PREVIEW_BLOCK pixels) is rendered first, then a pass with one ray per pixel
+	 * if anti aliasing is on, and then the final pass.
+	 * 
+	 * Rendering can be cancelled by interrupting the calling thread.
+	 * 
+	 * @param img         - the target image (TYPE_INT_RGB).
+	 * @param viewAngle   - the view angle.
+	 * @param executor    - runs the tiles. It's left open, so it can be reused for
+	 *                    the next renders.
+	 * @param progressive - whether to render preview passes first.
+	 * @param listener    - notified (on the render threads) whenever a tile of the
+	 *                    image has been written. May be null.
+	 * @param logger      - the logger.
+	 * @return the statistics of the render.
+	 */
+	public RenderStats render(BufferedImage img, double viewAngle, RenderExecutor executor, boolean progressive,
+			TileScheduler.TileListener listener, Logger logger)
+			throws InterruptedException, ExecutionException, IllegalArgumentException {
+		return render(FrameBuffer.of(img), viewAngle, executor, progressive, listener, logger);
+	}
+
+	/**
+	 * Same as render(img, viewAngle, executor, progressive, listener, logger) into
+	 * a framebuffer, e.g. a MappedFrameBuffer for images that don't fit the heap.
+	 * Only the tiles being rendered are kept on the heap, except for the adaptive
+	 * anti aliasing pass of a progressive render, which reads the whole image.
+	 */
+	public RenderStats render(FrameBuffer img, double viewAngle, RenderExecutor executor, boolean progressive,
+			TileScheduler.TileListener listener, Logger logger)
+			throws InterruptedException, ExecutionException, IllegalArgumentException {
+		return render(img, null, viewAngle, executor, progressive, listener, logger);
+	}
+
+	/**
+	 * Same as render(img, viewAngle, executor, progressive, listener, logger), and
+	 * keeps the colors of the pixels before they are clipped in hdr (if not null,
+	 * of the size of img). The image gets the colors as mapped by
+	 * ToneMapper.CLIP, and can be mapped again from hdr with another exposure or
+	 * gamma without rendering again.
+	 */
+	public RenderStats render(FrameBuffer img, HdrImage hdr, double viewAngle, RenderExecutor executor,
+			boolean progressive, TileScheduler.TileListener listener, Logger logger)
+			throws InterruptedException, ExecutionException, IllegalArgumentException {
+		int imgWidth = img.width(), imgHeight = img.height();
+		if (hdr != null && (hdr.width() != imgWidth || hdr.height() != imgHeight))
+			throw new IllegalArgumentException("The HDR image and the image have different sizes");
 		initSomeFields(imgWidth, imgHeight, logger);
 
-		BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
 		camera.initResolution(imgHeight, imgWidth, viewAngle);
-		int nThreads = Runtime.getRuntime().availableProcessors();
-		nThreads = nThreads < 2 ? 2 : nThreads;
-		this.logger.log("Intitialize executor. Using " + nThreads + " threads to render " + name);
-		executor = Executors.newFixedThreadPool(nThreads);
+		cameraPosition = camera.getCameraPosition();
+		this.logger.log("Rendering " + name + " on " + executor);
+
+		hdrImage = hdr;
+		TileScheduler scheduler = new TileScheduler(tileSize);
+		RenderContextPool renderContexts = new RenderContextPool(acceleration, lightSources.size());
+		this.renderContexts = renderContexts;
+
+		long maxRays = (long) imgHeight * imgWidth * antiAliasingFactor * antiAliasingFactor;
+		this.logger.log("Starting to shoot " + (isAdaptive() ? "up to " : "") + maxRays + " rays over " + name
+				+ " in tiles of " + tileSize + "x" + tileSize + " pixels");
+
+		RenderCompletedEvent event = new RenderCompletedEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			if (progressive) {
+				scheduler.render(img, executor, instrumented(this::renderTilePreview), listener);
+				this.logger.log("Preview of " + name + " is ready.");
+				if (antiAliasingFactor > 1) {
+					scheduler.render(img, executor,
+							instrumented((tile, rgb, context) -> renderTile(tile, rgb, 1, context)), listener);
+					this.logger.log("Rendered " + name + " without anti aliasing, refining...");
+					// The adaptive pass compares the samples that are already in the image.
+					if (isAdaptive()) {
+						centerSamples = new int[imgWidth * imgHeight];
+						img.read(0, 0, imgWidth, imgHeight, centerSamples);
+					}
+				}
+			}
+			scheduler.render(img, executor, instrumented(this::renderTile), listener);
+		} finally {
+			centerSamples = null;
+			hdrImage = null;
+			this.renderContexts = null;
+			cameraPosition = null;
+		}
+
+		// All the tiles are done, so the contexts are no longer touched.
+		RenderStats stats = new RenderStats(name, imgWidth, imgHeight);
+		String[] shapeTypeNames = acceleration.shapeTypeNames();
+		for (RenderContext context : renderContexts.contexts())
+			stats.add(context, shapeTypeNames);
+		stats.setRenderNanos(System.nanoTime() - start);
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.scene = name;
+			event.width = imgWidth;
+			event.height = imgHeight;
+			event.primaryRays = stats.getPrimaryRays();
+			event.shadowRays = stats.getShadowRays();
+			event.reflectionRays = stats.getReflectionRays();
+			event.skippedRays = stats.getSkippedRays();
+			event.culledShadowRays = stats.getCulledShadowRays();
+			event.occluderCacheHits = stats.getOccluderCacheHits();
+			event.occluderCacheLookups = stats.getOccluderCacheLookups();
+			event.nodeVisits = stats.getNodeVisits();
+			event.raysPerSecond = stats.getRaysPerSecond();
+			event.commit();
+		}
 
-		@SuppressWarnings("unchecked")
-		Future<Color>[][] futures = (Future<Color>[][]) (new Future[imgHeight][imgWidth]);
+		this.logger.log("Ray tracing of " + name + " has been completed.");
+		this.logger.log(stats.toString());
+		this.logger = null;
+		return stats;
+	}
 
-		this.logger.log("Starting to shoot " + (imgHeight * imgWidth * antiAliasingFactor * antiAliasingFactor)
-				+ " rays over " + name);
+	// Renders a tile with a context of the render.
+	private interface ContextTileRenderer {
+		void render(Tile tile, int[] rgb, RenderContext context);
+	}
 
-		for (int y = 0; y < imgHeight; ++y)
-			for (int x = 0; x < imgWidth; ++x) {
-				futures[y][x] = calcColor(x, y);
-				System.out.println();
+	/**
+	 * Wraps a tile renderer with a context borrowed from the contexts of the render
+	 * for the time of the tile, and records the render time of every tile.
+	 */
+	private TileScheduler.TileRenderer instrumented(ContextTileRenderer renderer) {
+		RenderContextPool renderContexts = this.renderContexts;
+		HdrImage hdrImage = this.hdrImage;
+		return (tile, rgb) -> {
+			RenderContext context = renderContexts.borrow();
+			TileRenderedEvent event = new TileRenderedEvent();
+			event.begin();
+			long start = System.nanoTime();
+			try {
+				if (hdrImage != null)
+					context.initLinearColors(tile.size());
+				renderer.render(tile, rgb, context);
+				if (hdrImage != null)
+					hdrImage.write(tile.x(), tile.y(), tile.width(), tile.height(), context.linearColors);
+				context.tileRendered(System.nanoTime() - start);
+			} finally {
+				renderContexts.giveBack(context);
 			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.scene = name;
+				event.x = tile.x();
+				event.y = tile.y();
+				event.width = tile.width();
+				event.height = tile.height();
+				event.commit();
+			}
+		};
+	}
 
-		this.logger.log("Done shooting rays.");
-		this.logger.log("Wating for results...");
+	private void renderTilePreview(Tile tile, int[] rgb, RenderContext context) {
+		for (int j = 0; j < tile.height(); j += PREVIEW_BLOCK)
+			for (int i = 0; i < tile.width(); i += PREVIEW_BLOCK) {
+				int w = Math.min(PREVIEW_BLOCK, tile.width() - i), h = Math.min(PREVIEW_BLOCK, tile.height() - j);
+				Vec color = calcColor(tile.x() + i + w / 2, tile.y() + j + h / 2, 1, context);
+				for (int y = j; y < j + h; ++y)
+					for (int x = i; x < i + w; ++x)
+						rgb[y * tile.width() + x] = pixel(color, y * tile.width() + x, context);
+			}
+	}
+
+	private boolean isAdaptive() {
+		return adaptiveAntiAliasing && antiAliasingFactor > 1;
+	}
 
-		for (int y = 0; y < imgHeight; ++y)
-			for (int x = 0; x < imgWidth; ++x) {
-				Color color = futures[y][x].get();
-				img.setRGB(x, y, color.getRGB());
+	private void renderTile(Tile tile, int[] rgb, RenderContext context) {
+		if (isAdaptive())
+			renderTileAdaptive(tile, rgb, context);
+		else
+			renderTile(tile, rgb, antiAliasingFactor, context);
+	}
+
+	private void renderTile(Tile tile, int[] rgb, int factor, RenderContext context) {
+		if (factor == 1) {
+			renderTilePackets(tile, rgb, context);
+			return;
+		}
+		int i = 0;
+		for (int y = tile.y(); y < tile.y() + tile.height(); ++y)
+			for (int x = tile.x(); x < tile.x() + tile.width(); ++x, ++i)
+				rgb[i] = pixel(calcColor(x, y, factor, context), i, context);
+	}
+
+	/**
+	 * Shoots one ray per pixel, tracing the primary rays of every block of
+	 * PACKET_BLOCK x PACKET_BLOCK pixels together.
+	 */
+	private void renderTilePackets(Tile tile, int[] rgb, RenderContext context) {
+		RayPacket packet = context.packet;
+		for (int j = 0; j < tile.height(); j += PACKET_BLOCK)
+			for (int i = 0; i < tile.width(); i += PACKET_BLOCK) {
+				int w = Math.min(PACKET_BLOCK, tile.width() - i), h = Math.min(PACKET_BLOCK, tile.height() - j);
+				packet.clear();
+				double[] directions = context.directions;
+				camera.rayDirections(tile.x() + i, tile.y() + j, w, h, directions);
+				for (int k = 0; k < w * h; ++k)
+					packet.add(new Ray(cameraPosition, new Vec(directions[3 * k], directions[3 * k + 1],
+							directions[3 * k + 2])));
+				context.primaryRays += packet.size();
+				acceleration.intersect(packet, context.traversal);
+
+				int lane = 0;
+				for (int y = j; y < j + h; ++y)
+					for (int x = i; x < i + w; ++x, ++lane)
+						rgb[y * tile.width() + x] = pixel(calcColor(packet.ray(lane), packet.hit(lane), 0, context),
+								y * tile.width() + x, context);
 			}
+	}
 
-		executor.shutdown();
+	/**
+	 * Shoots one ray through the center of every pixel of the tile and of the
+	 * pixels around it, then super-samples the pixels of the tile whose color
+	 * differs from one of their 8 neighbours by more than the threshold.
+	 */
+	private void renderTileAdaptive(Tile tile, int[] rgb, RenderContext context) {
+		int x0 = tile.x() - 1, y0 = tile.y() - 1;
+		int w = tile.width() + 2, h = tile.height() + 2;
+		int[] samples = new int[w * h];
+		// The linear colors of the samples, for the HDR image. The ones of a
+		// previous pass are in the HDR image already.
+		float[] linear = hdrImage != null && centerSamples == null ? new float[3 * w * h] : null;
+		for (int j = 0; j < h; ++j)
+			for (int i = 0; i < w; ++i) {
+				int x = x0 + i, y = y0 + j;
+				if (!isInImage(x, y)) {
+					samples[j * w + i] = -1;
+				} else if (centerSamples != null) {
+					samples[j * w + i] = centerSamples[y * imgWidth + x];
+				} else {
+					Vec color = calcColor(x, y, 1, context);
+					samples[j * w + i] = color.toRGB();
+					if (linear != null)
+						store(color, linear, j * w + i);
+				}
+			}
 
-		this.logger.log("Ray tracing of " + name + " has been completed.");
+		int threshold = (int) Math.round(antiAliasingThreshold * 255);
+		int k = 0;
+		for (int j = 1; j <= tile.height(); ++j)
+			for (int i = 1; i <= tile.width(); ++i) {
+				int center = samples[j * w + i];
+				boolean refine = false;
+				for (int dj = -1; dj <= 1 & !refine; ++dj)
+					for (int di = -1; di <= 1 & !refine; ++di) {
+						int neighbour = samples[(j + dj) * w + i + di];
+						refine = neighbour != -1 && contrast(center, neighbour) > threshold;
+					}
+				if (refine) {
+					rgb[k] = pixel(calcColor(x0 + i, y0 + j, antiAliasingFactor, context), k, context);
+				} else {
+					rgb[k] = center;
+					if (hdrImage != null) {
+						float[] src = linear != null ? linear : hdrImage.data();
+						int from = linear != null ? j * w + i : (y0 + j) * imgWidth + x0 + i;
+						System.arraycopy(src, 3 * from, context.linearColors, 3 * k, 3);
+					}
+				}
+				++k;
+			}
+	}
 
-		executor = null;
-		this.logger = null;
+	/**
+	 * Returns the color of a pixel clipped into the TYPE_INT_RGB layout, and keeps
+	 * its linear color (at index in the tile) for the HDR image.
+	 */
+	private int pixel(Vec color, int index, RenderContext context) {
+		if (hdrImage != null)
+			store(color, context.linearColors, index);
+		return color.toRGB();
+	}
 
-		return img;
+	private static void store(Vec color, float[] linear, int index) {
+		linear[3 * index] = (float) color.x;
+		linear[3 * index + 1] = (float) color.y;
+		linear[3 * index + 2] = (float) color.z;
+	}
+
+	private boolean isInImage(int x, int y) {
+		return x >= 0 & x < imgWidth & y >= 0 & y < imgHeight;
+	}
+
+	// The largest difference between the channels of two packed RGB colors.
+	private static int contrast(int rgb1, int rgb2) {
+		int max = 0;
+		for (int shift = 0; shift < 24; shift += 8)
+			max = Math.max(max, Math.abs(((rgb1 >> shift) & 0xFF) - ((rgb2 >> shift) & 0xFF)));
+		return max;
 	}
 
-	private Future<Color> calcColor(int x, int y) {
-		return executor.submit(() -> {
-			// TODO: You need to re-implement this method if you want to handle
-			// super-sampling. You're also free to change the given implementation if you
-			// want.
+	/**
+	 * Calculates the color of the pixel (x,y) as the average of factor x factor
+	 * rays shot through a regular grid inside the pixel.
+	 */
+	private Vec calcColor(int x, int y, int factor, RenderContext context) {
+		context.primaryRays += factor * factor;
+		if (factor == 1) {
 			Point centerPoint = camera.transform(x, y);
-			Ray ray = new Ray(camera.getCameraPosition(), centerPoint);
-			Vec color = calcColor(ray, 0);
-			return color.toColor();
-		});
+			Ray ray = new Ray(cameraPosition, centerPoint);
+			return calcColor(ray, 0, context);
+		}
+		MutableVec sum = new MutableVec();
+		RayPacket packet = context.packet;
+		if (factor * factor <= packet.capacity()) {
+			// The samples of a pixel are traced together.
+			packet.clear();
+			for (int j = 0; j < factor; ++j)
+				for (int i = 0; i < factor; ++i) {
+					double dx = (i + 0.5) / factor - 0.5, dy = (j + 0.5) / factor - 0.5;
+					packet.add(new Ray(cameraPosition, camera.transform(x + dx, y + dy)));
+				}
+			acceleration.intersect(packet, context.traversal);
+			for (int lane = 0; lane < packet.size(); ++lane)
+				sum.add(calcColor(packet.ray(lane), packet.hit(lane), 0, context));
+			return sum.mult(1.0 / (factor * factor)).toVec();
+		}
+		for (int j = 0; j < factor; ++j)
+			for (int i = 0; i < factor; ++i) {
+				double dx = (i + 0.5) / factor - 0.5, dy = (j + 0.5) / factor - 0.5;
+				Point samplePoint = camera.transform(x + dx, y + dy);
+				Ray ray = new Ray(cameraPosition, samplePoint);
+				sum.add(calcColor(ray, 0, context));
+			}
+		return sum.mult(1.0 / (factor * factor)).toVec();
 	}
 
-	private Vec calcColor(Ray ray, int recursionLevel) {
-		Vec recReflect = new  Vec(0, 0, 0);
-		Hit surfHit;
-		Hit hit = null;
-		Surface resultSurface;
-		Vec pNormal, lSum;
-		Point p;
+	private Vec calcColor(Ray ray, int recursionLevel, RenderContext context) {
 		// First, we find the surface (location where the ray hits the nearest object)
 		// so that we can determine color based on the material, location etc.
-		for(Surface surf: this.surfaces){
-			surfHit = surf.intersect(ray);
-			if(surfHit != null){
-				surfHit.setSurface(surf);
-			}
-			if(hit == null) hit = surfHit;
-			if(surfHit != null && surfHit.compareTo(hit) < 0) hit = surfHit;
+		// The acceleration structure sets the surface of the hit.
+		return calcColor(ray, context.surfaces.intersect(ray), recursionLevel, context);
+	}
+
+	/**
+	 * The color of a ray that has been traced already (the hit is null if the ray
+	 * hits nothing).
+	 * 
+	 * Instead of recursing, the reflected rays are pushed on the stack of the
+	 * render thread together with the weight of their path, and their colors are
+	 * added to the sum weighted.
+	 */
+	private Vec calcColor(Ray ray, Hit hit, int recursionLevel, RenderContext context) {
+		MutableVec color = new MutableVec();
+		shade(ray, hit, 1, recursionLevel, color, context);
+		RayStack stack = context.rays;
+		while (!stack.isEmpty()) {
+			Ray next = stack.ray();
+			double weight = stack.weight();
+			int level = stack.level();
+			stack.pop();
+			shade(next, context.surfaces.intersect(next), weight, level, color, context);
+		}
+		return color.toVec();
+	}
+
+	/**
+	 * Adds the local color at the hit of the ray, times the weight of its path, to
+	 * the color, and pushes the rays it spawns.
+	 * 
+	 * A spawned ray adds its color times the weight of its path to the sample, so
+	 * it is skipped if that weight is at or below the contribution threshold. Its
+	 * color isn't bounded before the pixel is clipped (lights may be brighter than
+	 * 1), so a positive threshold trades accuracy for speed and may change pixels.
+	 * A threshold of 0 gives the exact image, and still drops e.g. all the
+	 * reflections of materials with no reflection intensity.
+	 */
+	private void shade(Ray ray, Hit hit, double weight, int recursionLevel, MutableVec color,
+			RenderContext context) {
+		Surface resultSurface;
+		Vec pNormal;
+		Point p;
+		if (hit == null) {
+			color.x += weight * backgroundColor.x;
+			color.y += weight * backgroundColor.y;
+			color.z += weight * backgroundColor.z;
+			return;
 		}
-		if(hit == null) return backgroundColor;
 		// Now we know what point and surface we're working with,
 		// so we define variables for the point we are getting the color from,
 		// the vector which is normal to the surface, and of course the surface we are working with.
 		// We also start the sum for the light intensity formula.
+		// The sums are kept in mutable vectors and primitives so the shading loop doesn't allocate.
 		resultSurface = hit.getSurface();
 		pNormal = hit.getNormalToSurface();
 		p = ray.getHittingPoint(hit);
-		Vec normToSurf = hit.getNormalToSurface();
-		lSum = ambient.mult(resultSurface.Ka());
-		//diffuse and specular calculations, shadows considered (using sj scalar).
-		double sj = 1;
-		// Iterate over every light source and check if it's blocked. If it is, we will
-		// multiply the relevant diffuse/specular term by 0 as the light is not getting through.
+		Vec dir = ray.direction();
+		Vec Kd = resultSurface.Kd(), Ks = resultSurface.Ks();
+		MutableVec lSum = new MutableVec(ambient).mult(resultSurface.Ka());
+		MutableVec intense = new MutableVec();
+		//diffuse and specular calculations, shadows considered.
+		// A light is culled (without a shadow ray) if it can't change the color of the
+		// sample by more than its share of the contribution threshold, e.g. outside the
+		// cone of a spotlight or far from a decaying light.
+		double lightThreshold = contributionThreshold / lightSources.size();
+		// Iterate over every light source and check if it's blocked. If it is, the
+		// diffuse/specular terms are dropped as the light is not getting through.
+		// The last occluder of the light is tried first, then the acceleration structure answers
+		// the shadow query for all the surfaces and stops at the first blocker.
+		int lightIndex = -1;
 		for(Light light: this.lightSources){
+			lightIndex++;
 			Ray toLight = light.rayToLight(p);
-			Vec lHat = Ops.reflect(toLight.direction(), normToSurf);
-			for(Surface s : this.surfaces){
-				sj = (light.isOccludedBy(s,toLight)) ? 0: 1;
-				if(sj == 0) break;
-			}
+			Vec l = toLight.direction();
 			// Follow intensity formula
-			Vec intense = light.intensity(p,toLight);
-			double vTimesLHat = ray.direction().neg().dot(lHat);
+			light.intensity(p, toLight, intense);
+			// lHat is the reflection of the direction to the light: l - 2(l.N)N
+			double a = -2 * l.dot(pNormal);
+			double lHatX = l.x + a * pNormal.x, lHatY = l.y + a * pNormal.y, lHatZ = l.z + a * pNormal.z;
+			double vTimesLHat = -dir.x * lHatX + -dir.y * lHatY + -dir.z * lHatZ;
 			vTimesLHat = Math.max(vTimesLHat,0);
 			double shiny = Math.pow(vTimesLHat, resultSurface.shininess());
-			double NdotLj = normToSurf.dot(toLight.direction());
+			double NdotLj = pNormal.dot(l);
 			NdotLj = Math.max(NdotLj, 0);
-			// diffuse aspect
-			Vec diff = (resultSurface.Kd().mult(intense)).mult(NdotLj);
-			// specular aspect
-			Vec spec = (resultSurface.Ks().mult(intense)).mult(shiny);
-
-			Vec diffPlusSpec = diff.add(spec);
-
-			lSum = lSum.add(diffPlusSpec.mult(sj));
-
+			// diffuse aspect + specular aspect
+			double lightX = Kd.x * intense.x * NdotLj + Ks.x * intense.x * shiny;
+			double lightY = Kd.y * intense.y * NdotLj + Ks.y * intense.y * shiny;
+			double lightZ = Kd.z * intense.z * NdotLj + Ks.z * intense.z * shiny;
+			if (weight * Math.max(lightX, Math.max(lightY, lightZ)) <= lightThreshold) {
+				context.culledShadowRays++;
+				continue;
+			}
+			context.shadowRays++;
+			if (context.isOccluded(light, lightIndex, toLight))
+				continue;
+			lSum.x += lightX;
+			lSum.y += lightY;
+			lSum.z += lightZ;
 		}
+		color.x += weight * lSum.x;
+		color.y += weight * lSum.y;
+		color.z += weight * lSum.z;
 		// Check if we have reached maximum depth.
-		// If not, move the ray forward by an extremely small amount and continue with the recursion.
+		// If not, the reflected ray is traced later with the weight of its path.
 		if(++recursionLevel < this.maxRecursionLevel && this.renderReflections){
-			Ray nextRay = new Ray(p, Ops.reflect(ray.direction(),pNormal));
-			recReflect = calcColor(nextRay, recursionLevel);
+			double reflectionWeight = weight * resultSurface.reflectionIntensity();
+			if (reflectionWeight <= contributionThreshold) {
+				context.skippedRays++;
+			} else {
+				context.reflectionRays++;
+				context.rays.push(new Ray(p, Ops.reflect(dir, pNormal)), reflectionWeight, recursionLevel);
+			}
 		}
-		// Calculate sum and return appropriate color.
-		lSum = lSum.add(recReflect.mult(hit.getSurface().reflectionIntensity()));
-		return lSum;
 	}
 }
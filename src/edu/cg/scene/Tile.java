@@ -0,0 +1,44 @@
+package edu.cg.scene;
+
+/**
+ * A rectangular block of pixels in the output image. Tiles are the unit of work
+ * handed to the render threads.
+ */
+public class Tile {
+	private final int x;
+	private final int y;
+	private final int width;
+	private final int height;
+
+	public Tile(int x, int y, int width, int height) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	public int x() {
+		return x;
+	}
+
+	public int y() {
+		return y;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	public int size() {
+		return width * height;
+	}
+
+	@Override
+	public String toString() {
+		return "Tile(" + x + ", " + y + ", " + width + "x" + height + ")";
+	}
+}
@@ -0,0 +1,32 @@
+package edu.cg.scene;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for every rendered tile. Only recorded when a flight recording is
+ * running.
+ */
+@Name("edu.cg.TileRendered")
+@Label("Tile Rendered")
+@Category("Ray Tracing")
+@Description("A tile of the image has been rendered")
+class TileRenderedEvent extends Event {
+	@Label("Scene")
+	String scene;
+
+	@Label("X")
+	int x;
+
+	@Label("Y")
+	int y;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+}
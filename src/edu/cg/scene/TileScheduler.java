@@ -0,0 +1,122 @@
+package edu.cg.scene;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Splits an image into tiles and renders them on an executor. Each task renders
+ * a whole tile into a packed RGB buffer and copies it straight into the target
+ * image (or framebuffer), so the number of tasks and futures depends on the
+ * number of tiles and not on the number of pixels.
+ */
+public class TileScheduler {
+	public static final int DEFAULT_TILE_SIZE = 32;
+
+	/**
+	 * Renders a single tile.
+	 */
+	@FunctionalInterface
+	public interface TileRenderer {
+		/**
+		 * Fills the given buffer with the colors of the tile pixels.
+		 * 
+		 * @param tile - the tile to render.
+		 * @param rgb  - a row-major buffer of (at least) tile.size() pixels in the
+		 *             TYPE_INT_RGB layout.
+		 */
+		public void render(Tile tile, int[] rgb);
+	}
+
+	/**
+	 * Gets notified when a tile has been written into the image.
+	 */
+	@FunctionalInterface
+	public interface TileListener {
+		/**
+		 * Called on the render thread right after the tile has been written.
+		 */
+		public void tileRendered(Tile tile);
+	}
+
+	private final int tileSize;
+
+	public TileScheduler(int tileSize) {
+		if (tileSize <= 0)
+			throw new IllegalArgumentException("Tile size must be positive");
+		this.tileSize = tileSize;
+	}
+
+	public TileScheduler() {
+		this(DEFAULT_TILE_SIZE);
+	}
+
+	public int tileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Splits an image of the given size into tiles, row by row. Tiles on the right
+	 * and bottom edges may be smaller than the tile size.
+	 */
+	public List<Tile> split(int imgWidth, int imgHeight) {
+		List<Tile> tiles = new ArrayList<>();
+		for (int y = 0; y < imgHeight; y += tileSize)
+			for (int x = 0; x < imgWidth; x += tileSize)
+				tiles.add(new Tile(x, y, Math.min(tileSize, imgWidth - x), Math.min(tileSize, imgHeight - y)));
+		return tiles;
+	}
+
+	/**
+	 * Renders all the tiles of the image on the given executor and blocks until
+	 * they are all written into the image.
+	 * 
+	 * @param img      - the target image (TYPE_INT_RGB).
+	 * @param executor - the executor that runs the tile tasks.
+	 * @param renderer - renders a single tile.
+	 */
+	public void render(BufferedImage img, ExecutorService executor, TileRenderer renderer)
+			throws InterruptedException, ExecutionException {
+		render(img, executor, renderer, null);
+	}
+
+	/**
+	 * Same as render(img, executor, renderer), and notifies the listener (if not
+	 * null) whenever a tile is written. If the calling thread is interrupted the
+	 * remaining tiles are cancelled and an InterruptedException is thrown.
+	 */
+	public void render(BufferedImage img, ExecutorService executor, TileRenderer renderer, TileListener listener)
+			throws InterruptedException, ExecutionException {
+		render(img, RenderExecutor.of(executor), renderer, listener);
+	}
+
+	/**
+	 * Same as render(img, executor, renderer, listener) on a render executor.
+	 */
+	public void render(BufferedImage img, RenderExecutor executor, TileRenderer renderer, TileListener listener)
+			throws InterruptedException, ExecutionException {
+		render(FrameBuffer.of(img), executor, renderer, listener);
+	}
+
+	/**
+	 * Same as render(img, executor, renderer, listener) into a framebuffer.
+	 */
+	public void render(FrameBuffer frameBuffer, RenderExecutor executor, TileRenderer renderer,
+			TileListener listener) throws InterruptedException, ExecutionException {
+		List<Runnable> tasks = new ArrayList<>();
+		for (Tile tile : split(frameBuffer.width(), frameBuffer.height()))
+			tasks.add(() -> {
+				// Tiles that were already queued when the render got cancelled are skipped.
+				if (Thread.currentThread().isInterrupted())
+					return;
+				int[] rgb = new int[tile.size()];
+				renderer.render(tile, rgb);
+				frameBuffer.write(tile.x(), tile.y(), tile.width(), tile.height(), rgb);
+				if (listener != null)
+					listener.tileRendered(tile);
+			});
+		executor.runAll(tasks);
+	}
+}
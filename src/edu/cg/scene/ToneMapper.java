@@ -0,0 +1,104 @@
+package edu.cg.scene;
+
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * Turns the linear colors of an HdrImage into displayable pixels: scales them
+ * by the exposure, compresses them by the operator, applies the gamma and
+ * clips them to [0, 1].
+ *
+ * CLIP (no exposure, gamma 1) gives the same pixels as the renderer writes
+ * into the image, see Vec.toRGB.
+ */
+public class ToneMapper {
+	public enum Operator {
+		// Colors above 1 are clipped.
+		CLIP,
+		// c / (1 + c), which keeps the details of bright areas.
+		REINHARD
+	}
+
+	public static final ToneMapper CLIP = new ToneMapper(Operator.CLIP, 0, 1);
+
+	private final Operator operator;
+	private final double exposure;
+	private final double gamma;
+	private final double scale;
+
+	/**
+	 * @param operator - how colors above 1 are compressed.
+	 * @param exposure - in stops, every stop doubles the colors.
+	 * @param gamma    - the colors are raised to the power 1 / gamma.
+	 */
+	public ToneMapper(Operator operator, double exposure, double gamma) {
+		if (!(gamma > 0))
+			throw new IllegalArgumentException("Gamma must be positive");
+		if (!Double.isFinite(exposure))
+			throw new IllegalArgumentException("Exposure must be finite");
+		this.operator = operator;
+		this.exposure = exposure;
+		this.gamma = gamma;
+		scale = Math.pow(2, exposure);
+	}
+
+	public Operator operator() {
+		return operator;
+	}
+
+	public double exposure() {
+		return exposure;
+	}
+
+	public double gamma() {
+		return gamma;
+	}
+
+	/**
+	 * Maps a linear color to a pixel in the TYPE_INT_RGB layout.
+	 */
+	public int toRGB(float r, float g, float b) {
+		return toByte(r) << 16 | toByte(g) << 8 | toByte(b);
+	}
+
+	private int toByte(float c) {
+		double v = c * scale;
+		if (operator == Operator.REINHARD)
+			v = v > 0 ? v / (1 + v) : 0;
+		if (gamma != 1)
+			v = v > 0 ? Math.pow(v, 1 / gamma) : 0;
+		// Rounded like Vec.toRGB.
+		return (int) ((float) Math.min(1, Math.max(0, v)) * 255 + 0.5);
+	}
+
+	/**
+	 * Maps the image into the framebuffer (of the same size), row by row in
+	 * parallel.
+	 */
+	public void apply(HdrImage src, FrameBuffer dst) {
+		if (src.width() != dst.width() || src.height() != dst.height())
+			throw new IllegalArgumentException("The images have different sizes");
+		int width = src.width();
+		float[] colors = src.data();
+		IntStream.range(0, src.height()).parallel().forEach(y -> {
+			int[] row = new int[width];
+			for (int x = 0, i = 3 * y * width; x < width; ++x, i += 3)
+				row[x] = toRGB(colors[i], colors[i + 1], colors[i + 2]);
+			dst.write(0, y, width, 1, row);
+		});
+	}
+
+	/**
+	 * Returns the image mapped into a new TYPE_INT_RGB image.
+	 */
+	public BufferedImage apply(HdrImage src) {
+		BufferedImage ret = new BufferedImage(src.width(), src.height(), BufferedImage.TYPE_INT_RGB);
+		apply(src, FrameBuffer.of(ret));
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return operator.toString().toLowerCase() + " tone mapping, exposure " + exposure + ", gamma " + gamma;
+	}
+}
@@ -0,0 +1,213 @@
+package edu.cg.scene.acceleration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import edu.cg.Logger;
+import edu.cg.algebra.BoundingBox;
+import edu.cg.scene.objects.SphereSet;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Keeps built hierarchies in a directory, so a scene that is rendered again
+ * (e.g. with other rendering parameters, or by another run) doesn't build its
+ * hierarchy again.
+ *
+ * A BVH depends only on the bounding boxes of the surfaces and on which of
+ * them are spheres, so its file is named by a SHA-256 hash of those (and of
+ * the version of the build). A scene whose geometry changed gets another file,
+ * and the old one is simply not used anymore. Only BVHs are cached, the other
+ * accelerators are fast enough to build.
+ *
+ * Files are never deleted, so the directory grows with every scene (and every
+ * edit of a scene) that is rendered. It may be deleted at any time (but not
+ * during a render); the hierarchies are then built and stored again.
+ *
+ * The layout of a file, all numbers little endian:
+ *
+ * <pre>
+ * header   magic "CGBV", version, number of bounded surfaces, number of nodes
+ *          (4 ints), padded to HEADER_SIZE bytes
+ * nodes    the bounds of the nodes (6 doubles per node), then their data (3
+ *          ints per node), as in BVH
+ * order    the index of every surface of the tree among the bounded surfaces
+ *          (ints)
+ * </pre>
+ */
+public class AccelerationCache {
+	public static final String DEFAULT_DIRECTORY = "cache";
+	public static final int MAGIC = 0x56424743; // "CGBV"
+	public static final String EXTENSION = ".bvh";
+	private static final int HEADER_SIZE = 32;
+
+	private final Path directory;
+
+	public AccelerationCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns a cache in DEFAULT_DIRECTORY, relative to the working directory
+	 * (like the scenes folder).
+	 */
+	public static AccelerationCache inDefaultDirectory() {
+		return new AccelerationCache(Paths.get(DEFAULT_DIRECTORY));
+	}
+
+	public Path directory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the structure of the given type over the surfaces, read from the
+	 * cache if it is there and built (and stored) otherwise. A file that can't
+	 * be read or written is logged and the structure is built as usual.
+	 */
+	public Accelerator get(AcceleratorType type, List<Surface> surfaces, Logger logger) {
+		if (type != AcceleratorType.BVH)
+			return type.build(surfaces);
+
+		Path file = directory.resolve(key(surfaces) + EXTENSION);
+		if (Files.isRegularFile(file)) {
+			try {
+				BVH bvh = read(file, surfaces);
+				logger.log("Read the BVH from " + file);
+				return bvh;
+			} catch (IOException | IllegalArgumentException e) {
+				logger.log("Couldn't read the cached BVH " + file + ", building it again: " + e.getMessage());
+			}
+		}
+
+		BVH bvh = new BVH(surfaces);
+		try {
+			write(bvh, file);
+			logger.log("Cached the BVH in " + file);
+		} catch (IOException e) {
+			logger.log("Couldn't cache the BVH in " + file + ": " + e);
+		}
+		return bvh;
+	}
+
+	/**
+	 * Returns the hex SHA-256 hash of what a BVH over the surfaces depends on.
+	 */
+	static String key(List<Surface> surfaces) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256.
+			throw new IllegalStateException(e);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(BVH.BUILD_VERSION).putInt(surfaces.size());
+		double[] bounds = new double[6];
+		for (Surface surface : surfaces) {
+			if (buffer.remaining() < 56) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+			BoundingBox box = surface.boundingBox();
+			if (box == null) {
+				buffer.put((byte) 0);
+				continue;
+			}
+			buffer.put((byte) (SphereSet.isSphere(surface) ? 2 : 1));
+			box.copyTo(bounds, 0);
+			for (double bound : bounds)
+				buffer.putDouble(bound);
+		}
+		buffer.flip();
+		digest.update(buffer);
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	private static BVH read(Path file, List<Surface> surfaces) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+				throw new IOException("not a cached BVH");
+			int version = buffer.getInt();
+			if (version != BVH.BUILD_VERSION)
+				throw new IOException("unsupported version " + version);
+			int n = buffer.getInt(), nodeCount = buffer.getInt();
+			if (n < 0 || nodeCount < 0 || HEADER_SIZE + 60L * nodeCount + 4L * n != buffer.capacity())
+				throw new IOException("the file is truncated");
+
+			buffer.position(HEADER_SIZE);
+			double[] nodeBounds = new double[6 * nodeCount];
+			buffer.asDoubleBuffer().get(nodeBounds);
+			buffer.position(buffer.position() + 8 * nodeBounds.length);
+			int[] nodeData = new int[3 * nodeCount];
+			buffer.asIntBuffer().get(nodeData);
+			buffer.position(buffer.position() + 4 * nodeData.length);
+			int[] order = new int[n];
+			buffer.asIntBuffer().get(order);
+			return new BVH(surfaces, nodeBounds, nodeData, order);
+		}
+	}
+
+	// Writes into a temporary file that replaces the file once it is complete,
+	// so concurrent renders never read a partial file. The file isn't mapped
+	// here, as some platforms can't move a file while it is mapped.
+	private static void write(BVH bvh, Path file) throws IOException {
+		double[] nodeBounds = bvh.nodeBounds();
+		int[] nodeData = bvh.nodeData(), order = bvh.order();
+		int nodeCount = bvh.nodeCount();
+
+		Files.createDirectories(file.getParent());
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC).putInt(BVH.BUILD_VERSION).putInt(order.length).putInt(nodeCount);
+				buffer.position(HEADER_SIZE);
+				for (int i = 0; i < 6 * nodeCount; ++i) {
+					if (!buffer.hasRemaining())
+						flush(buffer, channel);
+					buffer.putDouble(nodeBounds[i]);
+				}
+				for (int i = 0; i < 3 * nodeCount; ++i) {
+					if (!buffer.hasRemaining())
+						flush(buffer, channel);
+					buffer.putInt(nodeData[i]);
+				}
+				for (int index : order) {
+					if (!buffer.hasRemaining())
+						flush(buffer, channel);
+					buffer.putInt(index);
+				}
+				flush(buffer, channel);
+				channel.force(false);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,76 @@
+package edu.cg.scene.acceleration;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ray;
+import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A structure over the surfaces of a scene that answers the ray queries of the
+ * renderer. All the queries can count their work into TraversalStats (which
+ * may be null).
+ */
+public interface Accelerator extends Intersectable {
+	/**
+	 * Returns the nearest hit of the ray with the surfaces, or null if the ray
+	 * doesn't hit any of them. The surface of the hit is set.
+	 */
+	public Hit intersect(Ray ray, TraversalStats stats);
+
+	/**
+	 * Returns the first surface found that the ray hits closer than maxDistance,
+	 * or null if there is none.
+	 */
+	public Surface occluder(Ray ray, double maxDistance, TraversalStats stats);
+
+	/**
+	 * Finds the nearest hit of every ray of the packet (see RayPacket.hit). By
+	 * default the rays are traced one by one.
+	 */
+	public default void intersect(RayPacket packet, TraversalStats stats) {
+		for (int lane = 0; lane < packet.size; ++lane)
+			packet.hits[lane] = intersect(packet.rays[lane], stats);
+	}
+
+	/**
+	 * Returns the names of the shape types of the surfaces, in the order of
+	 * TraversalStats.intersectionTests.
+	 */
+	public String[] shapeTypeNames();
+
+	@Override
+	public default Hit intersect(Ray ray) {
+		return intersect(ray, null);
+	}
+
+	@Override
+	public default boolean intersects(Ray ray, double maxDistance) {
+		return occluder(ray, maxDistance, null) != null;
+	}
+
+	/**
+	 * Creates counters for the queries of this structure, along with any memory
+	 * the queries reuse, for a single thread at a time. Queries without stats
+	 * allocate that memory on every call.
+	 */
+	public default TraversalStats newStats() {
+		return new TraversalStats(shapeTypeNames().length);
+	}
+
+	/**
+	 * Returns a view of the structure that counts its work into the given stats.
+	 */
+	public default Intersectable withStats(TraversalStats stats) {
+		return new Intersectable() {
+			@Override
+			public Hit intersect(Ray ray) {
+				return Accelerator.this.intersect(ray, stats);
+			}
+
+			@Override
+			public boolean intersects(Ray ray, double maxDistance) {
+				return occluder(ray, maxDistance, stats) != null;
+			}
+		};
+	}
+}
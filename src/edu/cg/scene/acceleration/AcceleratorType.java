@@ -0,0 +1,25 @@
+package edu.cg.scene.acceleration;
+
+import java.util.List;
+
+import edu.cg.scene.objects.Surface;
+
+/**
+ * The acceleration structures a scene can be rendered with.
+ */
+public enum AcceleratorType {
+	// A bounding volume hierarchy, good for any scene.
+	BVH,
+	// A uniform grid, builds in linear time and suits many similar-sized
+	// surfaces spread evenly over the scene.
+	GRID;
+
+	public Accelerator build(List<Surface> surfaces) {
+		switch (this) {
+		case GRID:
+			return new UniformGrid(surfaces);
+		default:
+			return new BVH(surfaces);
+		}
+	}
+}
@@ -0,0 +1,946 @@
+package edu.cg.scene.acceleration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+import edu.cg.algebra.BoundingBox;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.SphereSet;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A bounding volume hierarchy over the surfaces of a scene, built with the
+ * surface area heuristic (SAH). The split candidates of a node are the borders
+ * of BINS bins per axis, and the top levels of the tree are built in parallel
+ * on the common fork/join pool.
+ * 
+ * The tree is stored flattened in depth first order: the left child of an
+ * inner node directly follows it and the index of the right child is stored in
+ * the node. Surfaces without a bounding box (e.g. plains) are not part of the
+ * tree and are kept in a separate list that is tested for every ray.
+ * 
+ * The spheres of every leaf come first and are also packed into a SphereSet, so
+ * they are tested together without going through their surfaces.
+ */
+public class BVH implements Accelerator {
+	// Cost of traversing a node relative to the cost of intersecting a surface.
+	private static final double TRAVERSAL_COST = 1.0;
+	private static final int MAX_LEAF_SIZE = 4;
+	private static final int MAX_DEPTH = 64;
+	// Number of bins per axis the split candidates are taken from.
+	private static final int BINS = 32;
+	// Ranges with more surfaces are split by fork/join tasks, smaller ones are
+	// built by a single thread.
+	private static final int PARALLEL_THRESHOLD = 4096;
+	// Number of surfaces binned by a task when a big range is binned in parallel.
+	private static final int BIN_CHUNK = 8192;
+	// Changes whenever the build gives other trees for the same surfaces, so the
+	// trees stored by AccelerationCache are built again.
+	static final int BUILD_VERSION = 1;
+	// Margin added to the boxes to make them robust to rounding errors.
+	private static final double MARGIN = Ops.epsilon;
+
+	private final Surface[] surfaces;
+	private final Surface[] unbounded;
+	// The shape type of every surface, for the statistics.
+	private final String[] shapeTypeNames;
+	private final int[] surfaceTypes;
+	private final int[] unboundedTypes;
+
+	// Per node: (minX, minY, minZ, maxX, maxY, maxZ).
+	private double[] nodeBounds;
+	// Per node: (first surface or right child, number of surfaces (0 for inner
+	// nodes), split axis).
+	private int[] nodeData;
+	private int nodeCount = 0;
+	// The spheres of the leaves, in the order of the surfaces. spherePrefix[i] is
+	// the number of spheres before surface i, which is the index of surface i in
+	// the set if it is a sphere.
+	private SphereSet spheres;
+	private int[] spherePrefix;
+	// The index of every surface among the bounded surfaces as they were given.
+	private int[] order;
+
+	// Build time data.
+	private double[] primBounds;
+	private double[] centroids;
+
+	public BVH(List<Surface> surfaces) {
+		this(surfaces, null, null, null);
+	}
+
+	/**
+	 * Restores a hierarchy over the surfaces from its nodes and the order of its
+	 * surfaces (see nodeBounds(), nodeData() and order()), or builds it if they
+	 * are null.
+	 *
+	 * @throws IllegalArgumentException if the nodes don't make a hierarchy over
+	 *                                  the surfaces.
+	 */
+	BVH(List<Surface> surfaces, double[] nodeBounds, int[] nodeData, int[] order) {
+		List<Surface> bounded = new ArrayList<>();
+		List<Surface> unbounded = new ArrayList<>();
+		for (Surface surface : surfaces)
+			(surface.boundingBox() == null ? unbounded : bounded).add(surface);
+
+		this.surfaces = bounded.toArray(new Surface[0]);
+		this.unbounded = unbounded.toArray(new Surface[0]);
+		if (nodeBounds == null) {
+			build();
+		} else {
+			this.nodeBounds = nodeBounds;
+			this.nodeData = nodeData;
+			this.nodeCount = nodeData.length / 3;
+			this.order = order;
+			validate();
+		}
+		arrange();
+
+		Map<String, Integer> types = new LinkedHashMap<>();
+		surfaceTypes = typesOf(this.surfaces, types);
+		unboundedTypes = typesOf(this.unbounded, types);
+		shapeTypeNames = types.keySet().toArray(new String[0]);
+	}
+
+	// The index in types of the shape type of every surface, adding the new types.
+	static int[] typesOf(Surface[] surfaces, Map<String, Integer> types) {
+		int[] ret = new int[surfaces.length];
+		for (int i = 0; i < surfaces.length; ++i) {
+			String type = surfaces[i].shape().getClass().getSimpleName();
+			Integer index = types.get(type);
+			if (index == null)
+				types.put(type, index = types.size());
+			ret[i] = index;
+		}
+		return ret;
+	}
+
+	@Override
+	public String[] shapeTypeNames() {
+		return shapeTypeNames.clone();
+	}
+
+	public int size() {
+		return surfaces.length + unbounded.length;
+	}
+
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	public int unboundedCount() {
+		return unbounded.length;
+	}
+
+	// The flattened tree, for AccelerationCache. Not copied, so not to be changed.
+	double[] nodeBounds() {
+		return nodeBounds;
+	}
+
+	int[] nodeData() {
+		return nodeData;
+	}
+
+	int[] order() {
+		return order;
+	}
+
+	// MARK: build
+	private void build() {
+		int n = surfaces.length;
+		primBounds = new double[6 * n];
+		centroids = new double[3 * n];
+		// Every primitive writes its own slots, so the order of the threads doesn't
+		// matter.
+		IntStream.range(0, n).parallel().forEach(i -> {
+			surfaces[i].boundingBox().expand(MARGIN).copyTo(primBounds, 6 * i);
+			for (int axis = 0; axis < 3; ++axis)
+				centroids[3 * i + axis] = (primBounds[6 * i + axis] + primBounds[6 * i + 3 + axis]) / 2;
+		});
+
+		order = new int[n];
+		for (int i = 0; i < n; ++i)
+			order[i] = i;
+		if (n > 0) {
+			Subtree tree = ForkJoinPool.commonPool().invoke(new BuildTask(order, 0, n, 0));
+			nodeBounds = new double[6 * tree.nodeCount];
+			nodeData = new int[3 * tree.nodeCount];
+			nodeCount = tree.nodeCount;
+			tree.copyTo(nodeBounds, nodeData, 0);
+		} else {
+			nodeBounds = new double[0];
+			nodeData = new int[0];
+		}
+
+		primBounds = null;
+		centroids = null;
+	}
+
+	private void validate() {
+		int n = surfaces.length;
+		if (nodeBounds.length != 6 * nodeCount || nodeData.length != 3 * nodeCount || order.length != n
+				|| nodeCount == 0 && n > 0 || nodeCount > Math.max(1, 2 * n - 1))
+			throw new IllegalArgumentException("The nodes don't match the surfaces");
+		boolean[] seen = new boolean[n];
+		for (int i = 0; i < n; ++i) {
+			if (order[i] < 0 || order[i] >= n || seen[order[i]])
+				throw new IllegalArgumentException("The order isn't a permutation of the surfaces");
+			seen[order[i]] = true;
+		}
+		// The children come after their parents, so the depth of a node is known by
+		// the time it is checked. The traversal stacks hold MAX_DEPTH + 1 nodes.
+		int[] depth = new int[nodeCount];
+		for (int node = 0; node < nodeCount; ++node) {
+			int first = nodeData[3 * node], count = nodeData[3 * node + 1], axis = nodeData[3 * node + 2];
+			boolean leaf = count > 0 && first >= 0 && first <= n - count;
+			boolean inner = count == 0 && first > node + 1 && first < nodeCount && axis >= 0 && axis < 3;
+			if (!leaf && !inner)
+				throw new IllegalArgumentException("Illegal node " + node);
+			if (inner) {
+				if (depth[node] >= MAX_DEPTH)
+					throw new IllegalArgumentException("The hierarchy is deeper than " + MAX_DEPTH);
+				depth[node + 1] = Math.max(depth[node + 1], depth[node] + 1);
+				depth[first] = Math.max(depth[first], depth[node] + 1);
+			}
+		}
+	}
+
+	// Puts the surfaces in their order, with the spheres of every leaf first, and
+	// packs the spheres.
+	private void arrange() {
+		int n = surfaces.length;
+		int[] leaf = new int[n];
+		for (int node = 0; node < nodeCount; ++node) {
+			int count = nodeData[3 * node + 1];
+			if (count == 0)
+				continue;
+			// Move the spheres to the front of the leaf, keeping their order.
+			int first = nodeData[3 * node], size = 0;
+			for (int i = first; i < first + count; ++i)
+				if (SphereSet.isSphere(surfaces[order[i]]))
+					leaf[size++] = order[i];
+			for (int i = first; i < first + count; ++i)
+				if (!SphereSet.isSphere(surfaces[order[i]]))
+					leaf[size++] = order[i];
+			System.arraycopy(leaf, 0, order, first, count);
+		}
+
+		Surface[] ordered = new Surface[n];
+		for (int i = 0; i < n; ++i)
+			ordered[i] = surfaces[order[i]];
+		System.arraycopy(ordered, 0, surfaces, 0, n);
+
+		spheres = new SphereSet(n);
+		spherePrefix = new int[n + 1];
+		for (int i = 0; i < n; ++i) {
+			spherePrefix[i] = spheres.size();
+			if (SphereSet.isSphere(surfaces[i]))
+				spheres.add(surfaces[i]);
+		}
+		spherePrefix[n] = spheres.size();
+	}
+
+	/**
+	 * A part of the tree built by one task, in depth first order like the final
+	 * tree: either the nodes of a subtree built sequentially, or an inner node
+	 * over the parts built by two tasks. The parts are copied into the tree once
+	 * the whole tree is built, when their offsets are known.
+	 */
+	private static class Subtree {
+		final int nodeCount;
+		// The nodes of a sequential subtree (indices of right children are local).
+		final Nodes nodes;
+		// An inner node.
+		final double[] box;
+		final int axis;
+		final Subtree left, right;
+
+		Subtree(Nodes nodes) {
+			this.nodeCount = nodes.count;
+			this.nodes = nodes;
+			this.box = null;
+			this.axis = -1;
+			this.left = this.right = null;
+		}
+
+		Subtree(double[] box, int axis, Subtree left, Subtree right) {
+			this.nodeCount = 1 + left.nodeCount + right.nodeCount;
+			this.nodes = null;
+			this.box = box;
+			this.axis = axis;
+			this.left = left;
+			this.right = right;
+		}
+
+		// Copies the nodes into the tree, starting at node offset.
+		void copyTo(double[] bounds, int[] data, int offset) {
+			if (nodes != null) {
+				System.arraycopy(nodes.bounds, 0, bounds, 6 * offset, 6 * nodeCount);
+				System.arraycopy(nodes.data, 0, data, 3 * offset, 3 * nodeCount);
+				for (int node = offset; node < offset + nodeCount; ++node)
+					if (data[3 * node + 1] == 0)
+						data[3 * node] += offset;
+				return;
+			}
+			System.arraycopy(box, 0, bounds, 6 * offset, 6);
+			data[3 * offset] = offset + 1 + left.nodeCount;
+			data[3 * offset + 1] = 0;
+			data[3 * offset + 2] = axis;
+			left.copyTo(bounds, data, offset + 1);
+			right.copyTo(bounds, data, offset + 1 + left.nodeCount);
+		}
+	}
+
+	// Nodes in the layout of nodeBounds and nodeData.
+	private static class Nodes {
+		final double[] bounds;
+		final int[] data;
+		int count = 0;
+
+		// A subtree over n surfaces has at most 2n - 1 nodes.
+		Nodes(int surfaceCount) {
+			bounds = new double[6 * (2 * surfaceCount - 1)];
+			data = new int[3 * (2 * surfaceCount - 1)];
+		}
+	}
+
+	/**
+	 * Builds the subtree over order[begin, end). Big ranges are split here and
+	 * their halves are built by two tasks, smaller ones are built sequentially.
+	 * The splits depend only on the surfaces, never on the threads, so the same
+	 * surfaces always give the same tree.
+	 */
+	private class BuildTask extends RecursiveTask<Subtree> {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] order;
+		private final int begin, end, depth;
+
+		BuildTask(int[] order, int begin, int end, int depth) {
+			this.order = order;
+			this.begin = begin;
+			this.end = end;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Subtree compute() {
+			int count = end - begin;
+			if (count <= PARALLEL_THRESHOLD || depth >= MAX_DEPTH) {
+				Nodes nodes = new Nodes(count);
+				build(nodes, new Bins(), order, begin, end, depth);
+				return new Subtree(nodes);
+			}
+
+			Bins bins = parallelBins(order, begin, end);
+			Split split = bins.bestSplit(count);
+			int middle = partition(order, begin, end, bins, split);
+			BuildTask left = new BuildTask(order, begin, middle, depth + 1);
+			left.fork();
+			Subtree right = new BuildTask(order, middle, end, depth + 1).compute();
+			return new Subtree(bins.box.clone(), split.axis, left.join(), right);
+		}
+	}
+
+	// Builds the subtree over order[begin, end) into the nodes sequentially, and
+	// returns the index of its root.
+	private int build(Nodes nodes, Bins bins, int[] order, int begin, int end, int depth) {
+		int node = nodes.count++;
+		int count = end - begin;
+
+		bins.clear();
+		bins.bounds(this, order, begin, end);
+		System.arraycopy(bins.box, 0, nodes.bounds, 6 * node, 6);
+		Split split = null;
+		if (count > 1 && depth < MAX_DEPTH) {
+			bins.bin(this, order, begin, end);
+			split = bins.bestSplit(count);
+		}
+
+		if (split == null) {
+			nodes.data[3 * node] = begin;
+			nodes.data[3 * node + 1] = count;
+			return node;
+		}
+
+		int middle = partition(order, begin, end, bins, split);
+		int axis = split.axis;
+		build(nodes, bins, order, begin, middle, depth + 1);
+		nodes.data[3 * node] = build(nodes, bins, order, middle, end, depth + 1);
+		nodes.data[3 * node + 1] = 0;
+		nodes.data[3 * node + 2] = axis;
+		return node;
+	}
+
+	// The bins of a big range, computed in chunks on the common pool. The chunks
+	// are merged with min, max and sums, which give the same result in any order.
+	private Bins parallelBins(int[] order, int begin, int end) {
+		int chunks = (end - begin + BIN_CHUNK - 1) / BIN_CHUNK;
+		Bins ret = IntStream.range(0, chunks).parallel().mapToObj(c -> {
+			Bins chunk = new Bins();
+			chunk.bounds(this, order, begin + c * BIN_CHUNK, Math.min(end, begin + (c + 1) * BIN_CHUNK));
+			return chunk;
+		}).reduce(Bins::merge).get();
+		Bins binned = IntStream.range(0, chunks).parallel().mapToObj(c -> {
+			Bins chunk = new Bins();
+			System.arraycopy(ret.box, 0, chunk.box, 0, 6);
+			System.arraycopy(ret.centroidBox, 0, chunk.centroidBox, 0, 6);
+			chunk.bin(this, order, begin + c * BIN_CHUNK, Math.min(end, begin + (c + 1) * BIN_CHUNK));
+			return chunk;
+		}).reduce(Bins::merge).get();
+		return binned;
+	}
+
+	// Moves the surfaces left of the split to the front of order[begin, end) and
+	// returns where the ones right of it start.
+	private int partition(int[] order, int begin, int end, Bins bins, Split split) {
+		if (split.bin < 0)
+			return begin + (end - begin) / 2;
+		int i = begin, j = end - 1;
+		while (i <= j) {
+			if (bins.binOf(centroids[3 * order[i] + split.axis], split.axis) <= split.bin) {
+				++i;
+			} else {
+				int tmp = order[i];
+				order[i] = order[j];
+				order[j--] = tmp;
+			}
+		}
+		return i;
+	}
+
+	// A split after bin (inclusive) along axis, or in the middle of the range if
+	// bin is negative.
+	private static class Split {
+		final int axis, bin;
+
+		Split(int axis, int bin) {
+			this.axis = axis;
+			this.bin = bin;
+		}
+	}
+
+	/**
+	 * The bounds of a range of surfaces and of their centroids, and BINS bins per
+	 * axis that split the centroid bounds evenly, with the number of surfaces and
+	 * the bounds of every bin.
+	 */
+	private static class Bins {
+		final double[] box = emptyBounds();
+		final double[] centroidBox = emptyBounds();
+		final int[] counts = new int[3 * BINS];
+		// Per axis and bin: (minX, minY, minZ, maxX, maxY, maxZ).
+		final double[] bounds = new double[6 * 3 * BINS];
+		// Scratch for the sweep.
+		private final double[] acc = new double[6];
+		private final double[] leftAreas = new double[BINS];
+		private final int[] leftCounts = new int[BINS];
+
+		Bins() {
+			clearBins();
+		}
+
+		void clear() {
+			fill(box);
+			fill(centroidBox);
+			clearBins();
+		}
+
+		private void clearBins() {
+			Arrays.fill(counts, 0);
+			for (int bin = 0; bin < 3 * BINS; ++bin)
+				fill(bounds, 6 * bin);
+		}
+
+		void bounds(BVH bvh, int[] order, int begin, int end) {
+			for (int i = begin; i < end; ++i) {
+				int prim = order[i];
+				bvh.grow(box, 0, prim);
+				for (int axis = 0; axis < 3; ++axis) {
+					double c = bvh.centroids[3 * prim + axis];
+					centroidBox[axis] = Math.min(centroidBox[axis], c);
+					centroidBox[axis + 3] = Math.max(centroidBox[axis + 3], c);
+				}
+			}
+		}
+
+		void bin(BVH bvh, int[] order, int begin, int end) {
+			for (int i = begin; i < end; ++i) {
+				int prim = order[i];
+				for (int axis = 0; axis < 3; ++axis) {
+					int bin = binOf(bvh.centroids[3 * prim + axis], axis);
+					if (bin < 0)
+						continue;
+					counts[axis * BINS + bin]++;
+					bvh.grow(bounds, 6 * (axis * BINS + bin), prim);
+				}
+			}
+		}
+
+		// The bin of a centroid along the axis, or -1 if the centroids are all equal
+		// along it.
+		int binOf(double centroid, int axis) {
+			double min = centroidBox[axis], extent = centroidBox[axis + 3] - min;
+			if (!(extent > 0))
+				return -1;
+			return Math.min(BINS - 1, (int) ((centroid - min) * (BINS / extent)));
+		}
+
+		Bins merge(Bins other) {
+			for (int k = 0; k < 3; ++k) {
+				box[k] = Math.min(box[k], other.box[k]);
+				box[k + 3] = Math.max(box[k + 3], other.box[k + 3]);
+				centroidBox[k] = Math.min(centroidBox[k], other.centroidBox[k]);
+				centroidBox[k + 3] = Math.max(centroidBox[k + 3], other.centroidBox[k + 3]);
+			}
+			for (int bin = 0; bin < 3 * BINS; ++bin) {
+				counts[bin] += other.counts[bin];
+				for (int k = 0; k < 3; ++k) {
+					bounds[6 * bin + k] = Math.min(bounds[6 * bin + k], other.bounds[6 * bin + k]);
+					bounds[6 * bin + k + 3] = Math.max(bounds[6 * bin + k + 3], other.bounds[6 * bin + k + 3]);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Returns the cheapest split between two bins by the SAH, or null if a leaf
+		 * is cheaper. A range with more than MAX_LEAF_SIZE surfaces is always split,
+		 * in the middle if its centroids are all equal.
+		 */
+		Split bestSplit(int count) {
+			double parentArea = area(box);
+			double bestCost = Double.POSITIVE_INFINITY;
+			int bestAxis = -1, bestBin = -1;
+			for (int axis = 0; axis < 3; ++axis) {
+				// Sweep from the left, then from the right, and find the cheapest split.
+				fill(acc);
+				int n = 0;
+				for (int bin = 0; bin < BINS; ++bin) {
+					n += counts[axis * BINS + bin];
+					grow(acc, bounds, 6 * (axis * BINS + bin));
+					leftAreas[bin] = area(acc);
+					leftCounts[bin] = n;
+				}
+				fill(acc);
+				n = 0;
+				for (int bin = BINS - 1; bin > 0; --bin) {
+					n += counts[axis * BINS + bin];
+					grow(acc, bounds, 6 * (axis * BINS + bin));
+					int left = leftCounts[bin - 1];
+					if (left == 0 || n == 0)
+						continue;
+					double cost = TRAVERSAL_COST + (leftAreas[bin - 1] * left + area(acc) * n) / parentArea;
+					if (cost < bestCost) {
+						bestCost = cost;
+						bestAxis = axis;
+						bestBin = bin - 1;
+					}
+				}
+			}
+			if (bestCost < count)
+				return new Split(bestAxis, bestBin);
+			if (count <= MAX_LEAF_SIZE)
+				return null;
+			// Splitting doesn't pay off but the leaf is too big.
+			return bestAxis >= 0 ? new Split(bestAxis, bestBin) : new Split(largestAxis(box), -1);
+		}
+
+		private static void fill(double[] box) {
+			fill(box, 0);
+		}
+
+		private static void fill(double[] box, int offset) {
+			double inf = Double.POSITIVE_INFINITY;
+			for (int axis = 0; axis < 3; ++axis) {
+				box[offset + axis] = inf;
+				box[offset + axis + 3] = -inf;
+			}
+		}
+
+		private static void grow(double[] box, double[] bounds, int offset) {
+			for (int axis = 0; axis < 3; ++axis) {
+				box[axis] = Math.min(box[axis], bounds[offset + axis]);
+				box[axis + 3] = Math.max(box[axis + 3], bounds[offset + axis + 3]);
+			}
+		}
+	}
+
+	// Grows the box at offset to contain the primitive.
+	private void grow(double[] box, int offset, int prim) {
+		for (int axis = 0; axis < 3; ++axis) {
+			box[offset + axis] = Math.min(box[offset + axis], primBounds[6 * prim + axis]);
+			box[offset + axis + 3] = Math.max(box[offset + axis + 3], primBounds[6 * prim + 3 + axis]);
+		}
+	}
+
+	private static double[] emptyBounds() {
+		double inf = Double.POSITIVE_INFINITY;
+		return new double[] { inf, inf, inf, -inf, -inf, -inf };
+	}
+
+	private static double area(double[] box) {
+		double dx = box[3] - box[0], dy = box[4] - box[1], dz = box[5] - box[2];
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+
+	private static int largestAxis(double[] box) {
+		double dx = box[3] - box[0], dy = box[4] - box[1], dz = box[5] - box[2];
+		return dx >= dy && dx >= dz ? 0 : (dy >= dz ? 1 : 2);
+	}
+
+	@Override
+	public String toString() {
+		return "BVH of " + nodeCount + " nodes over " + size() + " surfaces (" + unbounded.length + " unbounded)";
+	}
+
+	public BoundingBox boundingBox() {
+		if (nodeCount == 0)
+			return null;
+		return new BoundingBox(nodeBounds[0], nodeBounds[1], nodeBounds[2], nodeBounds[3], nodeBounds[4],
+				nodeBounds[5]);
+	}
+
+	// MARK: traversal
+	// The stats of the queries of a BVH, with the stacks of their traversals. The
+	// stacks of MAX_DEPTH + 1 nodes are too big for the JIT to keep them off the
+	// heap, so they are reused rather than allocated for every ray.
+	private static final class Stacks extends TraversalStats {
+		private final int[] nodes = new int[MAX_DEPTH + 1];
+		// The lane masks of the nodes of a packet traversal.
+		private final int[] masks = new int[MAX_DEPTH + 1];
+
+		Stacks(int shapeTypes) {
+			super(shapeTypes);
+		}
+	}
+
+	@Override
+	public TraversalStats newStats() {
+		return new Stacks(shapeTypeNames.length);
+	}
+
+	// The node stack of the stats, or a new one if they don't have one.
+	private static int[] nodeStack(TraversalStats stats) {
+		return stats instanceof Stacks ? ((Stacks) stats).nodes : new int[MAX_DEPTH + 1];
+	}
+
+	// The mask stack of the stats, or a new one if they don't have one.
+	private static int[] maskStack(TraversalStats stats) {
+		return stats instanceof Stacks ? ((Stacks) stats).masks : new int[MAX_DEPTH + 1];
+	}
+
+	/**
+	 * Returns the nearest hit of the ray with the surfaces of the hierarchy, or
+	 * null if the ray doesn't hit any of them. The surface of the hit is set.
+	 */
+	@Override
+	public Hit intersect(Ray ray) {
+		return intersect(ray, null);
+	}
+
+	/**
+	 * Same as intersect(Ray), and counts the work into the stats (if not null).
+	 */
+	@Override
+	public Hit intersect(Ray ray, TraversalStats stats) {
+		Hit closest = null;
+		for (int i = 0; i < unbounded.length; ++i) {
+			if (stats != null)
+				stats.intersectionTests[unboundedTypes[i]]++;
+			closest = closer(closest, unbounded[i].intersect(ray));
+		}
+
+		if (nodeCount == 0)
+			return closest;
+
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double ox = o.x, oy = o.y, oz = o.z;
+		double ix = 1.0 / d.x, iy = 1.0 / d.y, iz = 1.0 / d.z;
+		boolean[] negative = { ix < 0, iy < 0, iz < 0 };
+
+		int[] stack = nodeStack(stats);
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (stats != null)
+				stats.nodeVisits++;
+			double tMax = closest == null ? Ops.infinity : closest.t();
+			if (!hitsBox(node, ox, oy, oz, ix, iy, iz, tMax))
+				continue;
+
+			int count = nodeData[3 * node + 1];
+			if (count > 0) {
+				int first = nodeData[3 * node];
+				int firstSphere = spherePrefix[first], sphereCount = spherePrefix[first + count] - firstSphere;
+				if (sphereCount > 0) {
+					if (stats != null)
+						stats.intersectionTests[surfaceTypes[first]] += sphereCount;
+					int sphere = spheres.nearest(ray, firstSphere, firstSphere + sphereCount, tMax);
+					if (sphere >= 0)
+						closest = spheres.hit(sphere, ray);
+				}
+				for (int i = first + sphereCount; i < first + count; ++i) {
+					if (stats != null)
+						stats.intersectionTests[surfaceTypes[i]]++;
+					closest = closer(closest, surfaces[i].intersect(ray));
+				}
+			} else {
+				// Visit the child that is nearer along the split axis first.
+				int left = node + 1, right = nodeData[3 * node];
+				if (negative[nodeData[3 * node + 2]]) {
+					stack[top++] = left;
+					stack[top++] = right;
+				} else {
+					stack[top++] = right;
+					stack[top++] = left;
+				}
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Finds the nearest hit of every ray of the packet (see RayPacket.hit). The
+	 * rays go down the tree together: a node is visited once for the whole
+	 * packet and its box is tested only for the lanes that hit the box of its
+	 * parent, so lanes drop out as they miss. Counts the work into the stats (if
+	 * not null), where a node visit is counted once per packet.
+	 * 
+	 * The hits are the same as the ones of intersect(Ray).
+	 */
+	@Override
+	public void intersect(RayPacket packet, TraversalStats stats) {
+		int n = packet.size;
+		if (n > Integer.SIZE)
+			throw new IllegalArgumentException("A packet may have up to " + Integer.SIZE + " rays");
+		double[] t = packet.t;
+		Hit[] hits = packet.hits;
+		int[] nearestSphere = packet.spheres;
+		for (int l = 0; l < n; ++l) {
+			hits[l] = null;
+			nearestSphere[l] = -1;
+			t[l] = Ops.infinity;
+			for (int i = 0; i < unbounded.length; ++i) {
+				if (stats != null)
+					stats.intersectionTests[unboundedTypes[i]]++;
+				Hit hit = unbounded[i].intersect(packet.rays[l]);
+				if (hit != null && (hits[l] == null || hit.compareTo(hits[l]) < 0)) {
+					hits[l] = hit;
+					t[l] = hit.t();
+				}
+			}
+		}
+
+		if (nodeCount > 0 && n > 0)
+			traverse(packet, stats);
+
+		for (int l = 0; l < n; ++l)
+			if (nearestSphere[l] >= 0)
+				hits[l] = spheres.hit(nearestSphere[l], packet.rays[l]);
+	}
+
+	private void traverse(RayPacket packet, TraversalStats stats) {
+		int n = packet.size;
+		double[] ox = packet.ox, oy = packet.oy, oz = packet.oz;
+		double[] dx = packet.dx, dy = packet.dy, dz = packet.dz;
+		double[] ix = packet.ix, iy = packet.iy, iz = packet.iz;
+		double[] t = packet.t;
+		Hit[] hits = packet.hits;
+		int[] nearestSphere = packet.spheres;
+
+		// A lane is in a mask if its ray hits the box of the node (bit l for lane l).
+		int[] stack = nodeStack(stats);
+		int[] masks = maskStack(stats);
+		int top = 0;
+		stack[top] = 0;
+		masks[top++] = n == Integer.SIZE ? -1 : (1 << n) - 1;
+		while (top > 0) {
+			int node = stack[--top];
+			int parentMask = masks[top];
+			if (stats != null)
+				stats.nodeVisits++;
+			int mask = 0;
+			for (int m = parentMask; m != 0; m &= m - 1) {
+				int l = Integer.numberOfTrailingZeros(m);
+				if (hitsBox(node, ox[l], oy[l], oz[l], ix[l], iy[l], iz[l], t[l]))
+					mask |= 1 << l;
+			}
+			if (mask == 0)
+				continue;
+
+			int count = nodeData[3 * node + 1];
+			if (count > 0) {
+				int first = nodeData[3 * node];
+				int firstSphere = spherePrefix[first], sphereCount = spherePrefix[first + count] - firstSphere;
+				for (int m = mask; m != 0; m &= m - 1) {
+					int l = Integer.numberOfTrailingZeros(m);
+					if (sphereCount > 0) {
+						if (stats != null)
+							stats.intersectionTests[surfaceTypes[first]] += sphereCount;
+						int sphere = spheres.nearest(ox[l], oy[l], oz[l], dx[l], dy[l], dz[l], firstSphere,
+								firstSphere + sphereCount, t[l]);
+						if (sphere >= 0) {
+							nearestSphere[l] = sphere;
+							hits[l] = null;
+							t[l] = spheres.distance(sphere, ox[l], oy[l], oz[l], dx[l], dy[l], dz[l]);
+						}
+					}
+					for (int i = first + sphereCount; i < first + count; ++i) {
+						if (stats != null)
+							stats.intersectionTests[surfaceTypes[i]]++;
+						Hit hit = surfaces[i].intersect(packet.rays[l]);
+						boolean found = hits[l] != null || nearestSphere[l] >= 0;
+						if (hit != null && (!found || hit.t() < t[l])) {
+							hits[l] = hit;
+							nearestSphere[l] = -1;
+							t[l] = hit.t();
+						}
+					}
+				}
+			} else {
+				// Visit the child that is nearer along the split axis first, as seen
+				// by the first lane.
+				int left = node + 1, right = nodeData[3 * node];
+				int l = Integer.numberOfTrailingZeros(mask);
+				int axis = nodeData[3 * node + 2];
+				double inv = axis == 0 ? ix[l] : (axis == 1 ? iy[l] : iz[l]);
+				stack[top] = inv < 0 ? left : right;
+				masks[top++] = mask;
+				stack[top] = inv < 0 ? right : left;
+				masks[top++] = mask;
+			}
+		}
+	}
+
+	/**
+	 * Checks if the ray hits any surface of the hierarchy closer than maxDistance.
+	 * Stops at the first blocker found.
+	 */
+	@Override
+	public boolean intersects(Ray ray, double maxDistance) {
+		return intersects(ray, maxDistance, null);
+	}
+
+	/**
+	 * Same as intersects(Ray, double), and counts the work into the stats (if not null).
+	 */
+	public boolean intersects(Ray ray, double maxDistance, TraversalStats stats) {
+		return occluder(ray, maxDistance, stats) != null;
+	}
+
+	/**
+	 * Returns the first surface found that the ray hits closer than maxDistance,
+	 * or null if there is none. Counts the work into the stats (if not null).
+	 */
+	@Override
+	public Surface occluder(Ray ray, double maxDistance, TraversalStats stats) {
+		for (int i = 0; i < unbounded.length; ++i) {
+			if (stats != null)
+				stats.intersectionTests[unboundedTypes[i]]++;
+			if (unbounded[i].intersects(ray, maxDistance))
+				return unbounded[i];
+		}
+
+		if (nodeCount == 0)
+			return null;
+
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double ox = o.x, oy = o.y, oz = o.z;
+		double ix = 1.0 / d.x, iy = 1.0 / d.y, iz = 1.0 / d.z;
+
+		int[] stack = nodeStack(stats);
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (stats != null)
+				stats.nodeVisits++;
+			if (!hitsBox(node, ox, oy, oz, ix, iy, iz, maxDistance))
+				continue;
+
+			int count = nodeData[3 * node + 1];
+			if (count > 0) {
+				int first = nodeData[3 * node];
+				int firstSphere = spherePrefix[first], sphereCount = spherePrefix[first + count] - firstSphere;
+				if (sphereCount > 0) {
+					if (stats != null)
+						stats.intersectionTests[surfaceTypes[first]] += sphereCount;
+					int sphere = spheres.first(ray, firstSphere, firstSphere + sphereCount, maxDistance);
+					if (sphere >= 0)
+						return spheres.surface(sphere);
+				}
+				for (int i = first + sphereCount; i < first + count; ++i) {
+					if (stats != null)
+						stats.intersectionTests[surfaceTypes[i]]++;
+					if (surfaces[i].intersects(ray, maxDistance))
+						return surfaces[i];
+				}
+			} else {
+				stack[top++] = nodeData[3 * node];
+				stack[top++] = node + 1;
+			}
+		}
+		return null;
+	}
+
+	private static Hit closer(Hit current, Hit hit) {
+		if (hit == null)
+			return current;
+		return current == null || hit.compareTo(current) < 0 ? hit : current;
+	}
+
+	private boolean hitsBox(int node, double ox, double oy, double oz, double ix, double iy, double iz,
+			double tMax) {
+		int b = 6 * node;
+		double tNear = 0, tFar = tMax;
+		// Comparisons with NaN (a ray that lies on a slab plain) are false, so
+		// such slabs are simply ignored.
+		double t0 = (nodeBounds[b] - ox) * ix, t1 = (nodeBounds[b + 3] - ox) * ix;
+		if (t0 > t1) {
+			double tmp = t0;
+			t0 = t1;
+			t1 = tmp;
+		}
+		if (t0 > tNear)
+			tNear = t0;
+		if (t1 < tFar)
+			tFar = t1;
+		t0 = (nodeBounds[b + 1] - oy) * iy;
+		t1 = (nodeBounds[b + 4] - oy) * iy;
+		if (t0 > t1) {
+			double tmp = t0;
+			t0 = t1;
+			t1 = tmp;
+		}
+		if (t0 > tNear)
+			tNear = t0;
+		if (t1 < tFar)
+			tFar = t1;
+		t0 = (nodeBounds[b + 2] - oz) * iz;
+		t1 = (nodeBounds[b + 5] - oz) * iz;
+		if (t0 > t1) {
+			double tmp = t0;
+			t0 = t1;
+			t1 = tmp;
+		}
+		if (t0 > tNear)
+			tNear = t0;
+		if (t1 < tFar)
+			tFar = t1;
+		return tNear <= tFar;
+	}
+}
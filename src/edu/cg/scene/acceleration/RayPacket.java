@@ -0,0 +1,101 @@
+package edu.cg.scene.acceleration;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+
+/**
+ * A group of coherent rays (e.g. the primary rays of a block of pixels) that
+ * are traced together through a BVH. The origins and directions are kept in
+ * primitive arrays, one entry per lane, and a packet is meant to be reused:
+ * clear it, add the rays and trace it.
+ */
+public class RayPacket {
+	// The number of lanes of a packet of 4x4 pixels.
+	public static final int DEFAULT_CAPACITY = 16;
+
+	final Ray[] rays;
+	final double[] ox, oy, oz;
+	final double[] dx, dy, dz;
+	// The inverse directions, for the box tests.
+	final double[] ix, iy, iz;
+	// The distance to the nearest hit found so far (Ops.infinity if none).
+	final double[] t;
+	// The nearest hit, or null while the nearest hit is a packed sphere.
+	final Hit[] hits;
+	// The index of the nearest packed sphere, or -1.
+	final int[] spheres;
+	int size = 0;
+
+	public RayPacket(int capacity) {
+		rays = new Ray[capacity];
+		ox = new double[capacity];
+		oy = new double[capacity];
+		oz = new double[capacity];
+		dx = new double[capacity];
+		dy = new double[capacity];
+		dz = new double[capacity];
+		ix = new double[capacity];
+		iy = new double[capacity];
+		iz = new double[capacity];
+		t = new double[capacity];
+		hits = new Hit[capacity];
+		spheres = new int[capacity];
+	}
+
+	public RayPacket() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; ++i) {
+			rays[i] = null;
+			hits[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Adds a ray as the next lane of the packet.
+	 */
+	public RayPacket add(Ray ray) {
+		if (size == rays.length)
+			throw new IllegalStateException("The packet is full");
+		Point o = ray.source();
+		Vec d = ray.direction();
+		int i = size++;
+		rays[i] = ray;
+		ox[i] = o.x;
+		oy[i] = o.y;
+		oz[i] = o.z;
+		dx[i] = d.x;
+		dy[i] = d.y;
+		dz[i] = d.z;
+		ix[i] = 1.0 / d.x;
+		iy[i] = 1.0 / d.y;
+		iz[i] = 1.0 / d.z;
+		hits[i] = null;
+		return this;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return rays.length;
+	}
+
+	public Ray ray(int lane) {
+		return rays[lane];
+	}
+
+	/**
+	 * Returns the nearest hit of the ray of the lane after the packet has been
+	 * traced, or null if the ray hits nothing. The surface of the hit is set.
+	 */
+	public Hit hit(int lane) {
+		return hits[lane];
+	}
+}
@@ -0,0 +1,17 @@
+package edu.cg.scene.acceleration;
+
+/**
+ * Counters of the work done by an acceleration structure. An instance is used
+ * by a single thread at a time, so the counters are plain fields. Structures
+ * may extend it with the memory their queries reuse (see Accelerator.newStats()).
+ */
+public class TraversalStats {
+	// BVH nodes or grid cells.
+	public long nodeVisits = 0;
+	// Indexed by the shape types of the structure (see Accelerator.shapeTypeNames()).
+	public final long[] intersectionTests;
+
+	public TraversalStats(int shapeTypes) {
+		intersectionTests = new long[shapeTypes];
+	}
+}
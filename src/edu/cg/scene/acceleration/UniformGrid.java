@@ -0,0 +1,417 @@
+package edu.cg.scene.acceleration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cg.algebra.BoundingBox;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.SphereSet;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A uniform grid over the surfaces of a scene. Every cell lists the surfaces
+ * whose bounding boxes overlap it, and rays walk through the cells in order
+ * with a 3D-DDA, stopping at the first cell that ends behind the nearest hit.
+ *
+ * The grid is built in linear time. Its resolution is chosen from the number
+ * of surfaces and the bounds of the scene, so that there are about
+ * CELLS_PER_SURFACE cells per surface and the cells are about cubes. A surface
+ * that spans several cells is tested once per ray, thanks to a mailbox that
+ * remembers which surfaces the current ray was tested against. The mailbox is
+ * kept in the stats of the queries (see newStats()).
+ *
+ * As in the BVH, surfaces without a bounding box are tested for every ray and
+ * the spheres are also packed into a SphereSet.
+ */
+public class UniformGrid implements Accelerator {
+	private static final double CELLS_PER_SURFACE = 4;
+	private static final int MAX_RESOLUTION = 128;
+	// Margin added to the boxes to make them robust to rounding errors.
+	private static final double MARGIN = Ops.epsilon;
+
+	private final Surface[] surfaces;
+	private final Surface[] unbounded;
+	private final String[] shapeTypeNames;
+	private final int[] surfaceTypes;
+	private final int[] unboundedTypes;
+	// The spheres of the surfaces, sphereIndex[i] is the index of surface i in
+	// the set or -1 if it isn't a sphere.
+	private final SphereSet spheres;
+	private final int[] sphereIndex;
+
+	// The bounds of the grid, the size of its cells and the number of cells
+	// along every axis.
+	private double minX, minY, minZ, maxX, maxY, maxZ;
+	private double cellX, cellY, cellZ;
+	private int nx = 0, ny = 0, nz = 0;
+	// The surfaces of cell c are cellItems[cellStart[c]] to cellItems[cellStart[c + 1] - 1].
+	private int[] cellStart;
+	private int[] cellItems;
+
+	// The surfaces the current ray has already been tested against.
+	private static class Mailbox {
+		private final int[] stamps;
+		private int stamp = 0;
+
+		Mailbox(int size) {
+			stamps = new int[size];
+		}
+
+		// Starts a new ray.
+		int next() {
+			if (++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+			return stamp;
+		}
+	}
+
+	public UniformGrid(List<Surface> surfaces) {
+		List<Surface> bounded = new ArrayList<>();
+		List<Surface> unbounded = new ArrayList<>();
+		for (Surface surface : surfaces)
+			(surface.boundingBox() == null ? unbounded : bounded).add(surface);
+		this.surfaces = bounded.toArray(new Surface[0]);
+		this.unbounded = unbounded.toArray(new Surface[0]);
+
+		Map<String, Integer> types = new LinkedHashMap<>();
+		surfaceTypes = BVH.typesOf(this.surfaces, types);
+		unboundedTypes = BVH.typesOf(this.unbounded, types);
+		shapeTypeNames = types.keySet().toArray(new String[0]);
+
+		int n = this.surfaces.length;
+		spheres = new SphereSet(n);
+		sphereIndex = new int[n];
+		for (int i = 0; i < n; ++i) {
+			sphereIndex[i] = SphereSet.isSphere(this.surfaces[i]) ? spheres.size() : -1;
+			if (sphereIndex[i] >= 0)
+				spheres.add(this.surfaces[i]);
+		}
+
+		build();
+	}
+
+	// The stats of the queries of a grid, with the mailbox of their rays.
+	private static final class GridStats extends TraversalStats {
+		private final UniformGrid grid;
+		private final Mailbox mailbox;
+
+		GridStats(UniformGrid grid) {
+			super(grid.shapeTypeNames.length);
+			this.grid = grid;
+			mailbox = new Mailbox(grid.surfaces.length);
+		}
+	}
+
+	@Override
+	public TraversalStats newStats() {
+		return new GridStats(this);
+	}
+
+	// The mailbox of the stats, or a new one if they don't come from this grid.
+	private Mailbox mailbox(TraversalStats stats) {
+		if (stats instanceof GridStats && ((GridStats) stats).grid == this)
+			return ((GridStats) stats).mailbox;
+		return new Mailbox(surfaces.length);
+	}
+
+	// MARK: build
+	private void build() {
+		int n = surfaces.length;
+		if (n == 0)
+			return;
+
+		BoundingBox[] boxes = new BoundingBox[n];
+		BoundingBox bounds = null;
+		for (int i = 0; i < n; ++i) {
+			boxes[i] = surfaces[i].boundingBox().expand(MARGIN);
+			bounds = bounds == null ? boxes[i] : bounds.union(boxes[i]);
+		}
+		minX = bounds.minX;
+		minY = bounds.minY;
+		minZ = bounds.minZ;
+		maxX = bounds.maxX;
+		maxY = bounds.maxY;
+		maxZ = bounds.maxZ;
+
+		// Cubic cells of the size that gives CELLS_PER_SURFACE cells per surface.
+		double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		double volume = dx * dy * dz;
+		double cellsPerUnit = Math.cbrt(CELLS_PER_SURFACE * n / volume);
+		nx = resolution(dx * cellsPerUnit);
+		ny = resolution(dy * cellsPerUnit);
+		nz = resolution(dz * cellsPerUnit);
+		cellX = dx / nx;
+		cellY = dy / ny;
+		cellZ = dz / nz;
+
+		// Count the surfaces of every cell, then fill them in.
+		cellStart = new int[nx * ny * nz + 1];
+		for (int i = 0; i < n; ++i)
+			forEachCell(boxes[i], c -> cellStart[c + 1]++);
+		for (int c = 0; c < nx * ny * nz; ++c)
+			cellStart[c + 1] += cellStart[c];
+		cellItems = new int[cellStart[nx * ny * nz]];
+		int[] fill = new int[nx * ny * nz];
+		for (int i = 0; i < n; ++i) {
+			int item = i;
+			forEachCell(boxes[i], c -> cellItems[cellStart[c] + fill[c]++] = item);
+		}
+	}
+
+	private static int resolution(double cells) {
+		// A flat scene (or a NaN from a zero volume) gets a single layer of cells.
+		if (!(cells >= 1))
+			return 1;
+		return (int) Math.min(MAX_RESOLUTION, Math.round(cells));
+	}
+
+	private interface CellVisitor {
+		void visit(int cell);
+	}
+
+	private void forEachCell(BoundingBox box, CellVisitor visitor) {
+		int x0 = cellX(box.minX), x1 = cellX(box.maxX);
+		int y0 = cellY(box.minY), y1 = cellY(box.maxY);
+		int z0 = cellZ(box.minZ), z1 = cellZ(box.maxZ);
+		for (int z = z0; z <= z1; ++z)
+			for (int y = y0; y <= y1; ++y)
+				for (int x = x0; x <= x1; ++x)
+					visitor.visit(cell(x, y, z));
+	}
+
+	private int cellX(double x) {
+		return clamp((int) Math.floor((x - minX) / cellX), nx);
+	}
+
+	private int cellY(double y) {
+		return clamp((int) Math.floor((y - minY) / cellY), ny);
+	}
+
+	private int cellZ(double z) {
+		return clamp((int) Math.floor((z - minZ) / cellZ), nz);
+	}
+
+	private static int clamp(int cell, int cells) {
+		return cell < 0 ? 0 : (cell >= cells ? cells - 1 : cell);
+	}
+
+	private int cell(int x, int y, int z) {
+		return (z * ny + y) * nx + x;
+	}
+
+	@Override
+	public String[] shapeTypeNames() {
+		return shapeTypeNames.clone();
+	}
+
+	public int size() {
+		return surfaces.length + unbounded.length;
+	}
+
+	public int cellCount() {
+		return nx * ny * nz;
+	}
+
+	@Override
+	public String toString() {
+		return "uniform grid of " + nx + "x" + ny + "x" + nz + " cells over " + size() + " surfaces ("
+				+ unbounded.length + " unbounded), " + (cellItems == null ? 0 : cellItems.length) + " references";
+	}
+
+	// MARK: traversal
+	/**
+	 * Walks the ray through the cells of the grid (a 3D-DDA).
+	 */
+	private final class Walk {
+		int x, y, z;
+		final int stepX, stepY, stepZ;
+		double nextX, nextY, nextZ;
+		final double deltaX, deltaY, deltaZ;
+		// The distance at which the ray leaves the grid.
+		final double exit;
+		final boolean inside;
+
+		Walk(double ox, double oy, double oz, double dx, double dy, double dz, double tMax) {
+			double ix = 1.0 / dx, iy = 1.0 / dy, iz = 1.0 / dz;
+			// Clip the ray against the bounds of the grid. Comparisons with NaN (a
+			// ray that lies on a slab plain) are false, so such slabs are ignored.
+			double tNear = 0, tFar = tMax;
+			double t0 = (minX - ox) * ix, t1 = (maxX - ox) * ix;
+			if (t0 > tNear | t1 > tNear)
+				tNear = Math.max(tNear, Math.min(t0, t1));
+			if (t0 < tFar | t1 < tFar)
+				tFar = Math.min(tFar, Math.max(t0, t1));
+			t0 = (minY - oy) * iy;
+			t1 = (maxY - oy) * iy;
+			if (t0 > tNear | t1 > tNear)
+				tNear = Math.max(tNear, Math.min(t0, t1));
+			if (t0 < tFar | t1 < tFar)
+				tFar = Math.min(tFar, Math.max(t0, t1));
+			t0 = (minZ - oz) * iz;
+			t1 = (maxZ - oz) * iz;
+			if (t0 > tNear | t1 > tNear)
+				tNear = Math.max(tNear, Math.min(t0, t1));
+			if (t0 < tFar | t1 < tFar)
+				tFar = Math.min(tFar, Math.max(t0, t1));
+			exit = tFar;
+			inside = tNear <= tFar;
+
+			x = cellX(ox + tNear * dx);
+			y = cellY(oy + tNear * dy);
+			z = cellZ(oz + tNear * dz);
+			stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+			stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+			stepZ = dz > 0 ? 1 : (dz < 0 ? -1 : 0);
+			nextX = stepX == 0 ? Double.POSITIVE_INFINITY : (minX + (x + (stepX > 0 ? 1 : 0)) * cellX - ox) * ix;
+			nextY = stepY == 0 ? Double.POSITIVE_INFINITY : (minY + (y + (stepY > 0 ? 1 : 0)) * cellY - oy) * iy;
+			nextZ = stepZ == 0 ? Double.POSITIVE_INFINITY : (minZ + (z + (stepZ > 0 ? 1 : 0)) * cellZ - oz) * iz;
+			deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : cellX * Math.abs(ix);
+			deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : cellY * Math.abs(iy);
+			deltaZ = stepZ == 0 ? Double.POSITIVE_INFINITY : cellZ * Math.abs(iz);
+		}
+
+		// The distance at which the ray leaves the current cell.
+		double cellExit() {
+			return Math.min(nextX, Math.min(nextY, nextZ));
+		}
+
+		// Moves to the next cell, returns false if the ray leaves the grid.
+		boolean advance() {
+			if (nextX <= nextY && nextX <= nextZ) {
+				x += stepX;
+				nextX += deltaX;
+				return x >= 0 && x < nx;
+			}
+			if (nextY <= nextZ) {
+				y += stepY;
+				nextY += deltaY;
+				return y >= 0 && y < ny;
+			}
+			z += stepZ;
+			nextZ += deltaZ;
+			return z >= 0 && z < nz;
+		}
+	}
+
+	/**
+	 * Returns the nearest hit of the ray with the surfaces of the grid, or null
+	 * if the ray doesn't hit any of them. The surface of the hit is set. Counts
+	 * the work into the stats (if not null), where every visited cell counts as
+	 * a node visit.
+	 */
+	@Override
+	public Hit intersect(Ray ray, TraversalStats stats) {
+		Hit closest = null;
+		for (int i = 0; i < unbounded.length; ++i) {
+			if (stats != null)
+				stats.intersectionTests[unboundedTypes[i]]++;
+			Hit hit = unbounded[i].intersect(ray);
+			if (hit != null && (closest == null || hit.compareTo(closest) < 0))
+				closest = hit;
+		}
+		if (surfaces.length == 0)
+			return closest;
+
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double ox = o.x, oy = o.y, oz = o.z, dx = d.x, dy = d.y, dz = d.z;
+		double best = closest == null ? Ops.infinity : closest.t();
+		Walk walk = new Walk(ox, oy, oz, dx, dy, dz, best);
+		if (!walk.inside)
+			return closest;
+
+		Mailbox mailbox = mailbox(stats);
+		int stamp = mailbox.next();
+		int nearestSphere = -1;
+		do {
+			if (stats != null)
+				stats.nodeVisits++;
+			int cell = cell(walk.x, walk.y, walk.z);
+			for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+				int i = cellItems[k];
+				if (mailbox.stamps[i] == stamp)
+					continue;
+				mailbox.stamps[i] = stamp;
+				if (stats != null)
+					stats.intersectionTests[surfaceTypes[i]]++;
+				int sphere = sphereIndex[i];
+				if (sphere >= 0) {
+					double t = spheres.distance(sphere, ox, oy, oz, dx, dy, dz);
+					if (t < best) {
+						best = t;
+						nearestSphere = sphere;
+						closest = null;
+					}
+				} else {
+					Hit hit = surfaces[i].intersect(ray);
+					boolean found = closest != null || nearestSphere >= 0;
+					if (hit != null && (!found || hit.t() < best)) {
+						best = hit.t();
+						closest = hit;
+						nearestSphere = -1;
+					}
+				}
+			}
+			// A hit inside the cell is nearer than anything in the next cells.
+			double cellExit = walk.cellExit();
+			if (best <= cellExit || cellExit > walk.exit)
+				break;
+		} while (walk.advance());
+
+		return nearestSphere >= 0 ? spheres.hit(nearestSphere, ray) : closest;
+	}
+
+	/**
+	 * Returns the first surface found that the ray hits closer than maxDistance,
+	 * or null if there is none. Counts the work into the stats (if not null).
+	 */
+	@Override
+	public Surface occluder(Ray ray, double maxDistance, TraversalStats stats) {
+		for (int i = 0; i < unbounded.length; ++i) {
+			if (stats != null)
+				stats.intersectionTests[unboundedTypes[i]]++;
+			if (unbounded[i].intersects(ray, maxDistance))
+				return unbounded[i];
+		}
+		if (surfaces.length == 0)
+			return null;
+
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double ox = o.x, oy = o.y, oz = o.z, dx = d.x, dy = d.y, dz = d.z;
+		Walk walk = new Walk(ox, oy, oz, dx, dy, dz, maxDistance);
+		if (!walk.inside)
+			return null;
+
+		Mailbox mailbox = mailbox(stats);
+		int stamp = mailbox.next();
+		do {
+			if (stats != null)
+				stats.nodeVisits++;
+			int cell = cell(walk.x, walk.y, walk.z);
+			for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+				int i = cellItems[k];
+				if (mailbox.stamps[i] == stamp)
+					continue;
+				mailbox.stamps[i] = stamp;
+				if (stats != null)
+					stats.intersectionTests[surfaceTypes[i]]++;
+				int sphere = sphereIndex[i];
+				boolean blocks = sphere >= 0 ? spheres.distance(sphere, ox, oy, oz, dx, dy, dz) < maxDistance
+						: surfaces[i].intersects(ray, maxDistance);
+				if (blocks)
+					return surfaces[i];
+			}
+		} while (walk.cellExit() <= walk.exit && walk.advance());
+		return null;
+	}
+}
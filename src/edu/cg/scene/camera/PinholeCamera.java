@@ -1,6 +1,5 @@
 package edu.cg.scene.camera;
 
-import edu.cg.UnimplementedMethodException;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
@@ -16,6 +15,12 @@ public class PinholeCamera {
 	private double distanceToPlain;
 	private double pixelWidth;
 	private double plainWidth;
+	// Precomputed by initResolution: the center of the image plain, the right
+	// vector, the offsets of the center pixel and the step between two pixels.
+	private double centerX, centerY, centerZ;
+	private double rightX, rightY, rightZ;
+	private double halfWidth, halfHeight;
+	private double stepX, stepY, stepZ;
 
 
 	/**
@@ -52,6 +57,20 @@ public class PinholeCamera {
 		this.viewAngle = viewAngle;
 		this.plainWidth = Math.tan(Math.toRadians(viewAngle/2)) * distanceToPlain * 2;
 		this.pixelWidth = plainWidth/width;
+
+		Point center = cameraPosition.add(towardsVec.mult(distanceToPlain));
+		Vec vRight = towardsVec.cross(upVec).normalize();
+		centerX = center.x;
+		centerY = center.y;
+		centerZ = center.z;
+		rightX = vRight.x;
+		rightY = vRight.y;
+		rightZ = vRight.z;
+		halfWidth = Math.floor(width / 2.0);
+		halfHeight = Math.floor(height / 2.0);
+		stepX = pixelWidth * rightX;
+		stepY = pixelWidth * rightY;
+		stepZ = pixelWidth * rightZ;
 	}
 
 	/**
@@ -63,15 +82,55 @@ public class PinholeCamera {
 	 * @return the middle point of the pixel (x,y) in the model coordinates.
 	 */
 	public Point transform(int x, int y) {
-		try{
-			// we use equation given in lecture video to convert points through finding the center point using the towards vector.
-			Point center = cameraPosition.add(towardsVec.mult(distanceToPlain));
-			Vec vRight = towardsVec.cross(upVec).normalize();
-			return center.add(vRight.mult((x - Math.floor(width/2.0))*pixelWidth)).add(upVec.mult(((0.0 - y) + Math.floor(height/2.0))*pixelWidth));
+		return transform((double) x, (double) y);
+	}
 
-		}
-		catch(Exception e){
-			throw new RuntimeException("Function failed: PinholeCamera/transform  ");
+	/**
+	 * Transforms from (fractional) pixel coordinates to the corresponding point in
+	 * model coordinates. Integer coordinates are the centers of the pixels, so
+	 * e.g. (x + 0.25, y - 0.25) is a point in the pixel (x,y).
+	 * 
+	 * @param x - the x coordinate in pixels.
+	 * @param y - the y coordinate in pixels.
+	 * @return the point (x,y) of the image plain in the model coordinates.
+	 */
+	public Point transform(double x, double y) {
+		// we use equation given in lecture video to convert points through finding the center point using the towards vector.
+		// The center point and the right vector are computed once in initResolution.
+		double a = (x - halfWidth) * pixelWidth, b = ((0.0 - y) + halfHeight) * pixelWidth;
+		return new Point((centerX + a * rightX) + b * upVec.x, (centerY + a * rightY) + b * upVec.y,
+				(centerZ + a * rightZ) + b * upVec.z);
+	}
+
+	/**
+	 * Fills the directions of the rays from the camera through the centers of a
+	 * block of pixels. The directions are not normalized (they end on the image
+	 * plain). Only the first pixel of every row is transformed, the others are
+	 * one step to the right of their neighbour.
+	 * 
+	 * @param x0         - the x index of the top left pixel of the block.
+	 * @param y0         - the y index of the top left pixel of the block.
+	 * @param width      - the number of pixels in a row of the block.
+	 * @param height     - the number of rows of the block.
+	 * @param directions - filled with (x, y, z) of the directions of the pixels,
+	 *                   row by row. Must have room for 3 * width * height values.
+	 */
+	public void rayDirections(int x0, int y0, int width, int height, double[] directions) {
+		double a = (x0 - halfWidth) * pixelWidth;
+		int k = 0;
+		for (int y = y0; y < y0 + height; ++y) {
+			double b = ((0.0 - y) + halfHeight) * pixelWidth;
+			double dx = ((centerX + a * rightX) + b * upVec.x) - cameraPosition.x;
+			double dy = ((centerY + a * rightY) + b * upVec.y) - cameraPosition.y;
+			double dz = ((centerZ + a * rightZ) + b * upVec.z) - cameraPosition.z;
+			for (int i = 0; i < width; ++i) {
+				directions[k++] = dx;
+				directions[k++] = dy;
+				directions[k++] = dz;
+				dx += stepX;
+				dy += stepY;
+				dz += stepZ;
+			}
 		}
 	}
 
@@ -0,0 +1,328 @@
+package edu.cg.scene.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.Scene;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.SphereSet;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A compact binary scene file. Large scenes are mostly spheres, so the spheres
+ * are stored as packed arrays that are memory mapped and copied in bulk on
+ * load, and their materials are stored once in a table. The rest of the scene
+ * (settings, camera, lights and the other surfaces) is small and is kept as
+ * JSON in the format of GsonMaker.
+ *
+ * The layout, all numbers little endian:
+ *
+ * <pre>
+ * header      magic "CGSC", version, material count, sphere count, JSON length
+ *             (5 ints), padded to HEADER_SIZE bytes
+ * materials   per material MATERIAL_DOUBLES doubles: Ka, Kd, Ks (x, y, z each),
+ *             reflection intensity, refraction intensity, refraction index,
+ *             shininess, transparent (0 or 1)
+ * spheres     the center x, center y, center z and radius arrays (doubles),
+ *             then the material index array (ints)
+ * JSON        UTF-8 object with the scene without its surfaces ("scene"), the
+ *             surfaces that aren't spheres ("surfaces") and their positions in
+ *             the surfaces of the scene ("positions")
+ * </pre>
+ *
+ * A single mapping is limited to 2 GB, so the sections are mapped one by one
+ * and big arrays in chunks, and a file may be of any size.
+ */
+public class BinaryScene {
+	public static final int MAGIC = 0x43534743; // "CGSC"
+	public static final int VERSION = 1;
+	public static final String EXTENSION = ".cgs";
+	private static final int HEADER_SIZE = 64;
+	private static final int MATERIAL_DOUBLES = 14;
+	// The largest part of a section that is mapped at once.
+	private static final int MAP_CHUNK = 1 << 30;
+
+	private BinaryScene() {
+	}
+
+	/**
+	 * Checks if the file starts like a binary scene.
+	 */
+	public static boolean isBinary(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (magic.hasRemaining())
+				if (channel.read(magic) < 0)
+					return false;
+			return magic.getInt(0) == MAGIC;
+		}
+	}
+
+	// MARK: writing
+	// A material by value, so equal materials share a table entry.
+	private static class MaterialKey {
+		final double[] values = new double[MATERIAL_DOUBLES];
+
+		MaterialKey(Material m) {
+			double[] v = values;
+			v[0] = m.Ka.x;
+			v[1] = m.Ka.y;
+			v[2] = m.Ka.z;
+			v[3] = m.Kd.x;
+			v[4] = m.Kd.y;
+			v[5] = m.Kd.z;
+			v[6] = m.Ks.x;
+			v[7] = m.Ks.y;
+			v[8] = m.Ks.z;
+			v[9] = m.reflectionIntensity;
+			v[10] = m.refractionIntensity;
+			v[11] = m.refractionIndex;
+			v[12] = m.shininess;
+			v[13] = m.isTransparent ? 1 : 0;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof MaterialKey && Arrays.equals(values, ((MaterialKey) other).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(values);
+		}
+	}
+
+	/**
+	 * Writes the scene into the file, replacing it if it exists.
+	 */
+	public static void write(Scene scene, Path file) throws IOException {
+		Gson gson = GsonMaker.getInstance();
+		List<Surface> surfaces = scene.getSurfaces();
+
+		List<Sphere> spheres = new ArrayList<>();
+		List<Integer> sphereMaterials = new ArrayList<>();
+		Map<MaterialKey, Integer> materialIndex = new HashMap<>();
+		List<MaterialKey> materials = new ArrayList<>();
+		JsonArray others = new JsonArray();
+		JsonArray positions = new JsonArray();
+		int position = 0;
+		for (Surface surface : surfaces) {
+			if (SphereSet.isSphere(surface) && surface.material() != null) {
+				MaterialKey key = new MaterialKey(surface.material());
+				Integer index = materialIndex.get(key);
+				if (index == null) {
+					index = materials.size();
+					materialIndex.put(key, index);
+					materials.add(key);
+				}
+				spheres.add((Sphere) surface.shape());
+				sphereMaterials.add(index);
+			} else {
+				others.add(gson.toJsonTree(surface));
+				positions.add(position);
+			}
+			position++;
+		}
+
+		JsonObject json = new JsonObject();
+		json.add("scene", withoutSurfaces().toJsonTree(scene));
+		json.add("surfaces", others);
+		json.add("positions", positions);
+		byte[] jsonBytes = json.toString().getBytes(StandardCharsets.UTF_8);
+
+		int n = spheres.size();
+		double[] materialValues = new double[MATERIAL_DOUBLES * materials.size()];
+		for (int i = 0; i < materials.size(); ++i)
+			System.arraycopy(materials.get(i).values, 0, materialValues, i * MATERIAL_DOUBLES, MATERIAL_DOUBLES);
+		double[] cx = new double[n], cy = new double[n], cz = new double[n], radius = new double[n];
+		int[] indices = new int[n];
+		for (int i = 0; i < n; ++i) {
+			Point c = spheres.get(i).center();
+			cx[i] = c.x;
+			cy[i] = c.y;
+			cz[i] = c.z;
+			radius[i] = spheres.get(i).radius();
+			indices[i] = sphereMaterials.get(i);
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ)) {
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(materials.size()).putInt(n).putInt(jsonBytes.length);
+			header.force();
+			long offset = put(channel, HEADER_SIZE, materialValues);
+			for (double[] array : new double[][] { cx, cy, cz, radius })
+				offset = put(channel, offset, array);
+			offset = put(channel, offset, indices);
+			if (jsonBytes.length > 0) {
+				MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, offset, jsonBytes.length);
+				buffer.put(jsonBytes);
+				buffer.force();
+			}
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+			throws IOException {
+		MappedByteBuffer ret = channel.map(mode, position, size);
+		ret.order(ByteOrder.LITTLE_ENDIAN);
+		return ret;
+	}
+
+	// Writes the array at the position and returns the position after it.
+	private static long put(FileChannel channel, long position, double[] src) throws IOException {
+		for (int i = 0; i < src.length;) {
+			int count = Math.min(src.length - i, MAP_CHUNK / Double.BYTES);
+			MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position,
+					(long) Double.BYTES * count);
+			buffer.asDoubleBuffer().put(src, i, count);
+			buffer.force();
+			position += (long) Double.BYTES * count;
+			i += count;
+		}
+		return position;
+	}
+
+	private static long put(FileChannel channel, long position, int[] src) throws IOException {
+		for (int i = 0; i < src.length;) {
+			int count = Math.min(src.length - i, MAP_CHUNK / Integer.BYTES);
+			MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position,
+					(long) Integer.BYTES * count);
+			buffer.asIntBuffer().put(src, i, count);
+			buffer.force();
+			position += (long) Integer.BYTES * count;
+			i += count;
+		}
+		return position;
+	}
+
+	// Serializes scenes without their surfaces, which may be millions.
+	private static Gson withoutSurfaces() {
+		return GsonMaker.newBuilder().addSerializationExclusionStrategy(new ExclusionStrategy() {
+			@Override
+			public boolean shouldSkipField(FieldAttributes field) {
+				return field.getDeclaringClass() == Scene.class && field.getName().equals("surfaces");
+			}
+
+			@Override
+			public boolean shouldSkipClass(Class<?> klass) {
+				return false;
+			}
+		}).create();
+	}
+
+	// MARK: reading
+	/**
+	 * Reads a scene from the file.
+	 *
+	 * @throws IOException if the file is not a binary scene of a supported
+	 *                     version.
+	 */
+	public static Scene read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException(file + " is not a binary scene");
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a binary scene");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException(file + " has an unsupported version: " + version);
+			int materialCount = header.getInt(), n = header.getInt(), jsonLength = header.getInt();
+			long size = HEADER_SIZE + 8L * MATERIAL_DOUBLES * materialCount + 36L * n + jsonLength;
+			if (materialCount < 0 || n < 0 || jsonLength < 0 || size > channel.size())
+				throw new IOException(file + " is truncated");
+
+			double[] values = new double[MATERIAL_DOUBLES * materialCount];
+			long position = get(channel, HEADER_SIZE, values);
+			Material[] materials = new Material[materialCount];
+			for (int i = 0; i < materialCount; ++i)
+				materials[i] = material(values, i * MATERIAL_DOUBLES);
+
+			double[] cx = new double[n], cy = new double[n], cz = new double[n], radius = new double[n];
+			for (double[] array : new double[][] { cx, cy, cz, radius })
+				position = get(channel, position, array);
+			int[] indices = new int[n];
+			position = get(channel, position, indices);
+			byte[] jsonBytes = new byte[jsonLength];
+			if (jsonLength > 0)
+				map(channel, FileChannel.MapMode.READ_ONLY, position, jsonLength).get(jsonBytes);
+
+			Gson gson = GsonMaker.getInstance();
+			JsonObject json = gson.fromJson(new String(jsonBytes, StandardCharsets.UTF_8), JsonObject.class);
+			Scene scene = gson.fromJson(json.get("scene"), Scene.class);
+			Surface[] others = gson.fromJson(json.get("surfaces"), Surface[].class);
+			int[] positions = gson.fromJson(json.get("positions"), int[].class);
+			if (others.length != positions.length)
+				throw new JsonParseException("The surfaces and their positions don't match");
+
+			// Put the surfaces back in their order.
+			int other = 0;
+			for (int i = 0; i < n; ++i) {
+				while (other < others.length && positions[other] == i + other)
+					scene.addSurface(others[other++]);
+				if (indices[i] < 0 || indices[i] >= materialCount)
+					throw new IOException(file + " has an illegal material index: " + indices[i]);
+				scene.addSurface(
+						new Surface(new Sphere(new Point(cx[i], cy[i], cz[i]), radius[i]), materials[indices[i]]));
+			}
+			while (other < others.length)
+				scene.addSurface(others[other++]);
+			return scene;
+		}
+	}
+
+	// Reads the array from the position and returns the position after it.
+	private static long get(FileChannel channel, long position, double[] dst) throws IOException {
+		for (int i = 0; i < dst.length;) {
+			int count = Math.min(dst.length - i, MAP_CHUNK / Double.BYTES);
+			map(channel, FileChannel.MapMode.READ_ONLY, position, (long) Double.BYTES * count).asDoubleBuffer()
+					.get(dst, i, count);
+			position += (long) Double.BYTES * count;
+			i += count;
+		}
+		return position;
+	}
+
+	private static long get(FileChannel channel, long position, int[] dst) throws IOException {
+		for (int i = 0; i < dst.length;) {
+			int count = Math.min(dst.length - i, MAP_CHUNK / Integer.BYTES);
+			map(channel, FileChannel.MapMode.READ_ONLY, position, (long) Integer.BYTES * count).asIntBuffer()
+					.get(dst, i, count);
+			position += (long) Integer.BYTES * count;
+			i += count;
+		}
+		return position;
+	}
+
+	private static Material material(double[] v, int offset) {
+		return new Material().initKa(new Vec(v[offset], v[offset + 1], v[offset + 2]))
+				.initKd(new Vec(v[offset + 3], v[offset + 4], v[offset + 5]))
+				.initKs(new Vec(v[offset + 6], v[offset + 7], v[offset + 8]))
+				.initReflectionIntensity(v[offset + 9]).initRefractionIntensity(v[offset + 10])
+				.initRefractionIndex(v[offset + 11]).initShininess((int) v[offset + 12])
+				.initIsTransparent(v[offset + 13] != 0);
+	}
+}
@@ -0,0 +1,98 @@
+package edu.cg.scene.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import edu.cg.menu.GsonMaker;
+
+/**
+ * Reads and writes the CLASSNAME/DATA objects of GsonMaker while streaming: the
+ * DATA is read straight from the reader by the adapter of its class, without
+ * building a JSON tree first. Only if DATA comes before CLASSNAME (which
+ * GsonMaker never writes) it has to be kept as a tree until the class is known.
+ */
+class ClassNameTypeAdapterFactory implements TypeAdapterFactory {
+	private final List<Class<?>> baseTypes;
+
+	ClassNameTypeAdapterFactory(Class<?>... baseTypes) {
+		this.baseTypes = Arrays.asList(baseTypes);
+	}
+
+	@Override
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		Class<? super T> baseType = type.getRawType();
+		if (!baseTypes.contains(baseType))
+			return null;
+		TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+
+		return new TypeAdapter<T>() {
+			@Override
+			public void write(JsonWriter out, T value) throws IOException {
+				if (value == null) {
+					out.nullValue();
+					return;
+				}
+				out.beginObject();
+				out.name(GsonMaker.CLASSNAME).value(value.getClass().getName());
+				out.name(GsonMaker.DATA);
+				adapter(value.getClass().getName()).write(out, value);
+				out.endObject();
+			}
+
+			@Override
+			public T read(JsonReader in) throws IOException {
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+					return null;
+				}
+				String className = null;
+				JsonElement pendingData = null;
+				T value = null;
+				in.beginObject();
+				while (in.hasNext()) {
+					String name = in.nextName();
+					if (name.equals(GsonMaker.CLASSNAME)) {
+						className = in.nextString();
+						if (pendingData != null)
+							value = adapter(className).fromJsonTree(pendingData);
+					} else if (name.equals(GsonMaker.DATA)) {
+						if (className != null)
+							value = adapter(className).read(in);
+						else
+							pendingData = elementAdapter.read(in);
+					} else {
+						in.skipValue();
+					}
+				}
+				in.endObject();
+				if (className == null)
+					throw new JsonParseException("No " + GsonMaker.CLASSNAME + " for a " + baseType.getSimpleName());
+				return value;
+			}
+
+			@SuppressWarnings("unchecked")
+			private TypeAdapter<T> adapter(String className) {
+				Class<?> klass;
+				try {
+					klass = Class.forName(className);
+				} catch (ClassNotFoundException e) {
+					throw new JsonParseException(e.getMessage());
+				}
+				if (!baseType.isAssignableFrom(klass))
+					throw new JsonParseException(className + " is not a " + baseType.getSimpleName());
+				return (TypeAdapter<T>) gson.getAdapter(klass);
+			}
+		};
+	}
+}
@@ -0,0 +1,98 @@
+package edu.cg.scene.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import edu.cg.scene.HdrImage;
+
+/**
+ * Reads and writes HDR images as Portable Float Maps: the header "PF", the
+ * width and the height, and a scale whose sign tells the byte order (negative
+ * for little endian), as text; then 3 floats per pixel, rows from the bottom
+ * up. Most image tools read it.
+ */
+public class PfmFile {
+	public static final String EXTENSION = ".pfm";
+
+	private PfmFile() {
+	}
+
+	/**
+	 * Writes the image into the file (little endian), replacing it if it exists.
+	 */
+	public static void write(HdrImage img, Path file) throws IOException {
+		int width = img.width();
+		float[] rgb = img.data();
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+			out.write(("PF\n" + width + " " + img.height() + "\n-1.0\n").getBytes(StandardCharsets.US_ASCII));
+			ByteBuffer row = ByteBuffer.allocate(12 * width).order(ByteOrder.LITTLE_ENDIAN);
+			for (int y = img.height() - 1; y >= 0; --y) {
+				row.clear();
+				row.asFloatBuffer().put(rgb, 3 * y * width, 3 * width);
+				out.write(row.array());
+			}
+		}
+	}
+
+	/**
+	 * Reads an RGB Portable Float Map.
+	 *
+	 * @throws IOException if the file is not one.
+	 */
+	public static HdrImage read(Path file) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			if (!token(in).equals("PF"))
+				throw new IOException(file + " is not an RGB Portable Float Map");
+			int width, height;
+			double scale;
+			try {
+				width = Integer.parseInt(token(in));
+				height = Integer.parseInt(token(in));
+				scale = Double.parseDouble(token(in));
+			} catch (NumberFormatException e) {
+				throw new IOException(file + " has an illegal header", e);
+			}
+			if (width <= 0 || height <= 0 || scale == 0)
+				throw new IOException(file + " has an illegal header");
+
+			HdrImage ret = new HdrImage(width, height);
+			float[] rgb = ret.data();
+			byte[] bytes = new byte[12 * width];
+			ByteBuffer row = ByteBuffer.wrap(bytes).order(scale < 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			for (int y = height - 1; y >= 0; --y) {
+				int read = 0;
+				while (read < bytes.length) {
+					int n = in.read(bytes, read, bytes.length - read);
+					if (n < 0)
+						throw new EOFException(file + " is truncated");
+					read += n;
+				}
+				row.clear();
+				row.asFloatBuffer().get(rgb, 3 * y * width, 3 * width);
+			}
+			return ret;
+		}
+	}
+
+	// Reads a header field; the last one ends with a single white space.
+	private static String token(InputStream in) throws IOException {
+		StringBuilder ret = new StringBuilder();
+		int c;
+		while ((c = in.read()) >= 0) {
+			if (!Character.isWhitespace(c))
+				ret.append((char) c);
+			else if (ret.length() > 0)
+				break;
+		}
+		return ret.toString();
+	}
+}
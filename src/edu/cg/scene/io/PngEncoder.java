@@ -0,0 +1,217 @@
+package edu.cg.scene.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import edu.cg.scene.FrameBuffer;
+
+/**
+ * Encodes an RGB image (8 bits per channel) into a PNG stream row by row, from
+ * the top row down. Only a few rows are kept in memory, so the size of the
+ * image is not limited by the heap.
+ *
+ * Every row is filtered with the PNG filter that gives the smallest sum of
+ * absolute differences, the usual heuristic for photographic images.
+ */
+public class PngEncoder implements Closeable {
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+	// Bytes per pixel.
+	private static final int BPP = 3;
+	// The largest IDAT chunk.
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final OutputStream out;
+	private final int width, height;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+	private final CRC32 crc = new CRC32();
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	private int chunkLength = 0;
+	// The previous (zeros before the first row) and the current row without
+	// filtering, and the current row with every filter (the filter type followed
+	// by the bytes).
+	private byte[] previous, current;
+	private final byte[][] filtered = new byte[5][];
+	private int rows = 0;
+	private boolean closed = false;
+
+	/**
+	 * Starts a PNG image of the given size on the stream, which is closed by
+	 * close().
+	 */
+	public PngEncoder(OutputStream out, int width, int height) throws IOException {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("The size of an image must be positive");
+		if ((long) width * BPP + 1 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The image is too wide: " + width);
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		previous = new byte[width * BPP];
+		current = new byte[width * BPP];
+		for (int filter = 0; filter < filtered.length; ++filter) {
+			filtered[filter] = new byte[width * BPP + 1];
+			filtered[filter][0] = (byte) filter;
+		}
+
+		out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8; // bits per channel
+		header[9] = 2; // RGB
+		// Deflate compression, adaptive filtering and no interlacing are all 0.
+		writeChunk("IHDR", header, header.length);
+	}
+
+	/**
+	 * Encodes the framebuffer into the file, replacing it if it exists.
+	 */
+	public static void write(FrameBuffer frameBuffer, Path file) throws IOException {
+		int width = frameBuffer.width();
+		int[] row = new int[width];
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));
+				PngEncoder encoder = new PngEncoder(out, width, frameBuffer.height())) {
+			for (int y = 0; y < frameBuffer.height(); ++y) {
+				frameBuffer.read(0, y, width, 1, row);
+				encoder.writeRow(row, 0);
+			}
+		}
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of rows encoded so far.
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * Encodes the next row from width pixels (TYPE_INT_RGB) in rgb from offset.
+	 */
+	public void writeRow(int[] rgb, int offset) throws IOException {
+		if (rows == height)
+			throw new IllegalStateException("All the rows of the image were written");
+		byte[] tmp = previous;
+		previous = current;
+		current = tmp;
+		for (int x = 0, b = 0; x < width; ++x) {
+			int color = rgb[offset + x];
+			current[b++] = (byte) (color >> 16);
+			current[b++] = (byte) (color >> 8);
+			current[b++] = (byte) color;
+		}
+
+		byte[] best = filter();
+		deflater.setInput(best);
+		while (!deflater.needsInput())
+			deflate();
+		++rows;
+	}
+
+	// Filters the current row with every filter and returns the one with the
+	// smallest sum of absolute (signed) values.
+	private byte[] filter() {
+		byte[] none = filtered[0], sub = filtered[1], up = filtered[2], average = filtered[3], paeth = filtered[4];
+		long[] sums = new long[5];
+		for (int i = 0; i < current.length; ++i) {
+			int x = current[i] & 0xff, b = previous[i] & 0xff;
+			int a = i >= BPP ? current[i - BPP] & 0xff : 0, c = i >= BPP ? previous[i - BPP] & 0xff : 0;
+			none[i + 1] = (byte) x;
+			sub[i + 1] = (byte) (x - a);
+			up[i + 1] = (byte) (x - b);
+			average[i + 1] = (byte) (x - ((a + b) >> 1));
+			paeth[i + 1] = (byte) (x - paethPredictor(a, b, c));
+			sums[0] += Math.abs(none[i + 1]);
+			sums[1] += Math.abs(sub[i + 1]);
+			sums[2] += Math.abs(up[i + 1]);
+			sums[3] += Math.abs(average[i + 1]);
+			sums[4] += Math.abs(paeth[i + 1]);
+		}
+		int best = 0;
+		for (int filter = 1; filter < sums.length; ++filter)
+			if (sums[filter] < sums[best])
+				best = filter;
+		return filtered[best];
+	}
+
+	private static int paethPredictor(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc)
+			return a;
+		return pb <= pc ? b : c;
+	}
+
+	// Deflates into the chunk, and writes the chunk when it is full.
+	private void deflate() throws IOException {
+		chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+		if (chunkLength == CHUNK_SIZE) {
+			writeChunk("IDAT", chunk, chunkLength);
+			chunkLength = 0;
+		}
+	}
+
+	private void writeChunk(String type, byte[] data, int length) throws IOException {
+		byte[] header = new byte[8];
+		putInt(header, 0, length);
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(typeBytes, 0, header, 4, 4);
+		out.write(header);
+		out.write(data, 0, length);
+		crc.reset();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		byte[] footer = new byte[4];
+		putInt(footer, 0, (int) crc.getValue());
+		out.write(footer);
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Ends the image and closes the stream.
+	 *
+	 * @throws IllegalStateException if not all the rows were written, in which
+	 *                               case the stream is closed as it is.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (rows < height)
+				throw new IllegalStateException("Only " + rows + " of the " + height + " rows were written");
+			deflater.finish();
+			while (!deflater.finished())
+				deflate();
+			if (chunkLength > 0)
+				writeChunk("IDAT", chunk, chunkLength);
+			chunkLength = 0;
+			writeChunk("IEND", new byte[0], 0);
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+}
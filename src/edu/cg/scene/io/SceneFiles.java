@@ -0,0 +1,26 @@
+package edu.cg.scene.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import edu.cg.scene.Scene;
+
+/**
+ * Loads scene files, both JSON (see SceneReader) and binary (see BinaryScene)
+ * ones. The format is told by the content of the file, not by its name.
+ */
+public class SceneFiles {
+	private SceneFiles() {
+	}
+
+	public static Scene load(Path file) throws IOException {
+		if (BinaryScene.isBinary(file))
+			return BinaryScene.read(file);
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return SceneReader.read(reader);
+		}
+	}
+}
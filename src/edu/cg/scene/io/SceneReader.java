@@ -0,0 +1,84 @@
+package edu.cg.scene.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import edu.cg.scene.Scene;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Reads JSON scene files (in the format of GsonMaker) while streaming, so the
+ * file is never held in memory as a whole. The surfaces are read one at a time
+ * and handed to the scene or to a consumer; everything else in a scene file is
+ * small and is read into a JSON tree and then into the scene.
+ */
+public class SceneReader {
+	private static final String SURFACES = "surfaces";
+
+	private static class GsonHolder {
+		static final Gson gson = new GsonBuilder()
+				.registerTypeAdapterFactory(new ClassNameTypeAdapterFactory(Light.class, Shape.class)).create();
+	}
+
+	private SceneReader() {
+	}
+
+	/**
+	 * Reads a scene with its surfaces.
+	 */
+	public static Scene read(Reader reader) throws IOException {
+		List<Surface> surfaces = new ArrayList<>();
+		Scene scene = read(reader, surfaces::add);
+		for (Surface surface : surfaces)
+			scene.addSurface(surface);
+		return scene;
+	}
+
+	/**
+	 * Reads a scene and hands its surfaces, in their order, to the consumer
+	 * (e.g. to collect them for AcceleratorType.build or to pack the spheres into
+	 * a SphereSet) instead of adding them to the scene.
+	 *
+	 * @return the scene without its surfaces.
+	 */
+	public static Scene read(Reader reader, Consumer<Surface> surfaces) throws IOException {
+		Gson gson = GsonHolder.gson;
+		TypeAdapter<Surface> surfaceAdapter = gson.getAdapter(Surface.class);
+		TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+
+		JsonReader in = gson.newJsonReader(reader);
+		// Like Gson.fromJson(String, Class), which has always read the scene files.
+		in.setLenient(true);
+		JsonObject fields = new JsonObject();
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (name.equals(SURFACES) && in.peek() == JsonToken.BEGIN_ARRAY) {
+				in.beginArray();
+				while (in.hasNext()) {
+					Surface surface = surfaceAdapter.read(in);
+					if (surface != null)
+						surfaces.accept(surface);
+				}
+				in.endArray();
+			} else {
+				fields.add(name, elementAdapter.read(in));
+			}
+		}
+		in.endObject();
+		return gson.fromJson(fields, Scene.class);
+	}
+}
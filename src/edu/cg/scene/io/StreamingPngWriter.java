@@ -0,0 +1,97 @@
+package edu.cg.scene.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import edu.cg.scene.FrameBuffer;
+import edu.cg.scene.Tile;
+import edu.cg.scene.TileScheduler;
+
+/**
+ * Encodes the rows of a framebuffer as soon as all the tiles that cover them
+ * are rendered, so the PNG file is written while the image is rendered and the
+ * rows are never all on the heap. Used as the tile listener of a render that
+ * isn't progressive (the rows would be encoded with the preview otherwise).
+ *
+ * The tiles are finished in any order; the rows are encoded in order by one
+ * render thread at a time while the others go on rendering.
+ */
+public class StreamingPngWriter implements TileScheduler.TileListener, Closeable {
+	private final FrameBuffer frameBuffer;
+	private final PngEncoder encoder;
+	// The number of pixels rendered in every row.
+	private final int[] rendered;
+	// The next row to encode, and whether a thread is encoding rows.
+	private int next = 0;
+	private boolean encoding = false;
+
+	public StreamingPngWriter(FrameBuffer frameBuffer, PngEncoder encoder) {
+		if (frameBuffer.width() != encoder.width() || frameBuffer.height() != encoder.height())
+			throw new IllegalArgumentException("The framebuffer and the image have different sizes");
+		this.frameBuffer = frameBuffer;
+		this.encoder = encoder;
+		rendered = new int[frameBuffer.height()];
+	}
+
+	/**
+	 * Records the tile and encodes the rows that are complete.
+	 *
+	 * @throws UncheckedIOException if writing failed, which fails the render.
+	 */
+	@Override
+	public void tileRendered(Tile tile) {
+		synchronized (this) {
+			for (int y = tile.y(); y < tile.y() + tile.height(); ++y)
+				rendered[y] += tile.width();
+			if (encoding)
+				return;
+			encoding = true;
+		}
+
+		// Rows that get complete meanwhile are encoded by this thread too.
+		int width = frameBuffer.width();
+		int[] row = new int[width];
+		try {
+			while (true) {
+				int y;
+				synchronized (this) {
+					if (next == rendered.length || rendered[next] < width) {
+						encoding = false;
+						return;
+					}
+					y = next;
+				}
+				frameBuffer.read(0, y, width, 1, row);
+				encoder.writeRow(row, 0);
+				synchronized (this) {
+					next = y + 1;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				encoding = false;
+			}
+			throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+		}
+	}
+
+	/**
+	 * Returns the number of rows encoded so far.
+	 */
+	public synchronized int rows() {
+		return next;
+	}
+
+	/**
+	 * Ends the image once it is rendered and closes the encoder.
+	 *
+	 * @throws IllegalStateException if rows are missing (e.g. the render was
+	 *                               cancelled), in which case the stream is closed
+	 *                               as it is.
+	 */
+	@Override
+	public void close() throws IOException {
+		encoder.close();
+	}
+}
@@ -2,7 +2,6 @@ package edu.cg.scene.lightSources;
 
 import edu.cg.UnimplementedMethodException;
 import edu.cg.algebra.*;
-import edu.cg.scene.objects.Surface;
 
 public class CutoffSpotlight extends PointLight {
 	private Vec direction;
@@ -45,26 +44,19 @@ public class CutoffSpotlight extends PointLight {
 	}
 
 	@Override
-	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-		Hit hit = surface.intersect(rayToLight);
-		if (hit == null)
-			return false;
-		Point source = rayToLight.source();
-		Point hittingPoint = rayToLight.getHittingPoint(hit);
-		return source.distSqr(position) > source.distSqr(hittingPoint);
-	}
-
-	@Override
-	public Vec intensity(Point hittingPoint, Ray rayToLight) {
-		double dist = hittingPoint.dist(position);
-		Vec v = direction.normalize().neg();
-		double cos =v.dot(rayToLight.direction().normalize());
+	public MutableVec intensity(Point hittingPoint, Ray rayToLight, MutableVec out) {
+		double dist = distance(hittingPoint);
+		// cos = (-direction/|direction|) . (rayDir/|rayDir|)
+		Vec rayDir = rayToLight.direction();
+		double s = 1.0 / direction.norm(), r = 1.0 / rayDir.norm();
+		double cos = -(s * direction.x) * (r * rayDir.x) - (s * direction.y) * (r * rayDir.y)
+				- (s * direction.z) * (r * rayDir.z);
 		double acos = Math.acos(cos);
 		double angle = Math.toDegrees((acos));
 		if (angle > cutoffAngle || cos < Ops.epsilon){
-			return  new Vec (0);
+			return out.set(0, 0, 0);
 		}
-		double decay = kq*(Math.pow(dist,2)) + kl*dist + kc;
-		return intensity.mult(Math.cos(Math.toRadians(cutoffAngle)) ).mult(1/decay) ;
+		double decay = kq*(dist*dist) + kl*dist + kc;
+		return out.set(intensity).mult(Math.cos(Math.toRadians(cutoffAngle))).mult(1/decay);
 	}
 }
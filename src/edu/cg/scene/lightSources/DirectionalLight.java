@@ -1,11 +1,11 @@
 package edu.cg.scene.lightSources;
 
 import edu.cg.UnimplementedMethodException;
-import edu.cg.algebra.Hit;
+import edu.cg.algebra.MutableVec;
+import edu.cg.algebra.Ops;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
-import edu.cg.scene.objects.Surface;
 
 public class DirectionalLight extends Light {
 	private Vec direction = new Vec(0, -1, -1);
@@ -37,9 +37,8 @@ public class DirectionalLight extends Light {
 	}
 
 	@Override
-	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-		Hit hit = surface.intersect(rayToLight);
-		return (hit != null);
+	public double distance(Point fromPoint) {
+		return Ops.infinity;
 	}
 
 	@Override
@@ -47,4 +46,9 @@ public class DirectionalLight extends Light {
 		return intensity;
 	}
 
+	@Override
+	public MutableVec intensity(Point hittingPoint, Ray rayToLight, MutableVec out) {
+		return out.set(intensity);
+	}
+
 }
@@ -1,9 +1,10 @@
 package edu.cg.scene.lightSources;
 
+import edu.cg.algebra.MutableVec;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
-import edu.cg.scene.objects.Surface;
+import edu.cg.scene.objects.Intersectable;
 
 public abstract class Light {
 	protected Vec intensity = new Vec(1, 1, 1); //white color
@@ -27,13 +28,24 @@ public abstract class Light {
 	public abstract Ray rayToLight(Point fromPoint);
 	
 	/**
-	 * Checks if the given surface occludes the light-source. The surface occludes the light source
-	 * if the given ray first intersects the surface before reaching the light source.
-	 * @param surface -The given surface
+	 * Returns the distance from the given point to the light source.
+	 * @param fromPoint - The given point
+	 * @return the distance to the light, or Ops.infinity if the light is infinitely far.
+	 */
+	public abstract double distance(Point fromPoint);
+	
+	/**
+	 * Checks if the given object occludes the light-source. The object occludes the light source
+	 * if the given ray first intersects the object before reaching the light source.
+	 * The object may be a single surface or an acceleration structure over many surfaces, the 
+	 * query stops at the first blocker found.
+	 * @param occluder -The given object
 	 * @param rayToLight - the ray to the light source
-	 * @return true if the ray is occluded by the surface..
+	 * @return true if the ray is occluded by the object.
 	 */
-	public abstract boolean isOccludedBy(Surface surface, Ray rayToLight);
+	public boolean isOccludedBy(Intersectable occluder, Ray rayToLight) {
+		return occluder.intersects(rayToLight, distance(rayToLight.source()));
+	}
 	
 	/**
 	 * Returns the light intensity at the specified point.
@@ -41,5 +53,17 @@ public abstract class Light {
 	 * @param rayToLight - A ray to the light source (this is relevant for point-light and spotlight)
 	 * @return A vector representing the light intensity (the r,g and b channels). 
 	 */
-	public abstract Vec intensity(Point hittingPoint, Ray rayToLight);
+	public Vec intensity(Point hittingPoint, Ray rayToLight) {
+		return intensity(hittingPoint, rayToLight, new MutableVec()).toVec();
+	}
+	
+	/**
+	 * Writes the light intensity at the specified point into the given vector, 
+	 * without allocating.
+	 * @param hittingPoint - The given point
+	 * @param rayToLight - A ray to the light source (this is relevant for point-light and spotlight)
+	 * @param out - The vector that receives the light intensity (the r,g and b channels)
+	 * @return out
+	 */
+	public abstract MutableVec intensity(Point hittingPoint, Ray rayToLight, MutableVec out);
 }
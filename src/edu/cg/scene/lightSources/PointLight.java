@@ -1,10 +1,9 @@
 package edu.cg.scene.lightSources;
 
-import edu.cg.algebra.Hit;
+import edu.cg.algebra.MutableVec;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
-import edu.cg.scene.objects.Surface;
 
 /**
  * TODO: This class represents a point light and is already implemented. Read
@@ -57,20 +56,15 @@ public class PointLight extends Light {
 	}
 
 	@Override
-	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-		Hit hit = surface.intersect(rayToLight);
-		if (hit == null)
-			return false;
-
-		Point source = rayToLight.source();
-		Point hittingPoint = rayToLight.getHittingPoint(hit);
-		return source.distSqr(position) > source.distSqr(hittingPoint);
+	public double distance(Point fromPoint) {
+		double dx = fromPoint.x - position.x, dy = fromPoint.y - position.y, dz = fromPoint.z - position.z;
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
 	}
 
 	@Override
-	public Vec intensity(Point hittingPoint, Ray rayToLight) {
-		double dist = hittingPoint.dist(position);
+	public MutableVec intensity(Point hittingPoint, Ray rayToLight, MutableVec out) {
+		double dist = distance(hittingPoint);
 		double decay = kc + (kl + kq * dist) * dist;
-		return intensity.mult(1 / decay);
+		return out.set(intensity).mult(1 / decay);
 	}
 }
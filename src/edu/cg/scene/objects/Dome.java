@@ -1,6 +1,7 @@
 package edu.cg.scene.objects;
 
 import edu.cg.UnimplementedMethodException;
+import edu.cg.algebra.BoundingBox;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
@@ -26,6 +27,12 @@ public class Dome extends Shape {
 		return "Dome:" + endl + sphere + plain + endl;
 	}
 
+	@Override
+	public BoundingBox boundingBox() {
+		// The dome is the part of the sphere on one side of the plain.
+		return sphere.boundingBox();
+	}
+
 	@Override
 	public Hit intersect(Ray ray) {
 		// TODO: implement this method (bonus only).
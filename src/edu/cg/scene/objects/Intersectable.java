@@ -15,4 +15,20 @@ public interface Intersectable {
 	 * @return The hit point of the ray with the object if exist and null otherwise. 
 	 */
 	public Hit intersect(Ray ray);
+	
+	/**
+	 * Checks if the ray hits the object closer than the given distance. This is an
+	 * any-hit query (e.g. for shadow rays): it doesn't need to find the nearest
+	 * hit and shouldn't build a Hit object. 
+	 * 
+	 * Implementations should override the default, which delegates to intersect(Ray).
+	 * 
+	 * @param ray         the specified ray
+	 * @param maxDistance hits at this distance or farther are ignored
+	 * @return true if the ray hits the object at a distance smaller than maxDistance.
+	 */
+	public default boolean intersects(Ray ray, double maxDistance) {
+		Hit hit = intersect(ray);
+		return hit != null && hit.t() < maxDistance;
+	}
 }
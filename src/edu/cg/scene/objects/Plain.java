@@ -1,5 +1,6 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.BoundingBox;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ops;
 import edu.cg.algebra.Point;
@@ -15,7 +16,8 @@ public class Plain extends Shape {
 	// implicit form of a plain: ax + by + cz + d = 0;
 	private double a, b, c, d;
 
-	private transient Vec normal = null;
+	private transient volatile Vec normal = null;
+	private transient volatile Vec negNormal = null;
 
 	// Plain Constructors.
 	public Plain(double a, double b, double c, double d) {
@@ -39,9 +41,19 @@ public class Plain extends Shape {
 		return "Plain: a = " + a + ", b = " + b + ", c = " + c + ", d = " + d + endl;
 	}
 
-	public synchronized Vec normal() {
-		if (normal == null)
-			normal = new Vec(a, b, c).normalize();
+	public Vec normal() {
+		Vec n = normal;
+		if (n == null)
+			n = initNormals();
+		return n;
+	}
+
+	private synchronized Vec initNormals() {
+		if (normal == null) {
+			Vec n = new Vec(a, b, c).normalize();
+			negNormal = n.neg();
+			normal = n;
+		}
 		return normal;
 	}
 
@@ -53,7 +65,8 @@ public class Plain extends Shape {
 	 * @return A plain normal.
 	 */
 	public Vec normal(Ray ray) {
-		return ray.direction().dot(normal()) < 0 ? normal() : normal().neg();
+		Vec n = normal();
+		return ray.direction().dot(n) < 0 ? n : negNormal;
 	}
 
 	/**
@@ -64,8 +77,15 @@ public class Plain extends Shape {
 	 * @return The value ax+by+cz+d
 	 */
 	public double substitute(Point p) {
-		Vec abc = new Vec(a, b, c);
-		return abc.dot(p.toVec()) + d;
+		return a * p.x + b * p.y + c * p.z + d;
+	}
+
+	/**
+	 * A plain is unbounded.
+	 */
+	@Override
+	public BoundingBox boundingBox() {
+		return null;
 	}
 
 	/**
@@ -73,9 +93,19 @@ public class Plain extends Shape {
 	 */
 	@Override
 	public Hit intersect(Ray ray) {
-		Vec abc = new Vec(a, b, c);
-
-		double t = -substitute(ray.source()) / ray.direction().dot(abc);
+		double t = distance(ray);
 		return t > Ops.epsilon & t < Ops.infinity ? new Hit(t, normal(ray)) : null;
 	}
+
+	@Override
+	public boolean intersects(Ray ray, double maxDistance) {
+		double t = distance(ray);
+		return t > Ops.epsilon & t < Ops.infinity & t < maxDistance;
+	}
+
+	// The signed distance along the ray to the plain.
+	private double distance(Ray ray) {
+		Vec dir = ray.direction();
+		return -substitute(ray.source()) / (a * dir.x + b * dir.y + c * dir.z);
+	}
 }
@@ -1,6 +1,5 @@
 package edu.cg.scene.objects;
 
-import edu.cg.UnimplementedMethodException;
 import edu.cg.algebra.*;
 
 public class Sphere extends Shape {
@@ -33,45 +32,73 @@ public class Sphere extends Shape {
 		this.radius = radius;
 		return this;
 	}
+
+	public Point center() {
+		return center;
+	}
+
+	public double radius() {
+		return radius;
+	}
+	
+	@Override
+	public BoundingBox boundingBox() {
+		return new BoundingBox(center.x - radius, center.y - radius, center.z - radius,
+				center.x + radius, center.y + radius, center.z + radius);
+	}
 	
 	@Override
 	public Hit intersect(Ray ray) {
-		Vec normalizeDir = ray.direction().normalize();
-		Vec L = this.center.sub(ray.source());
-		// check direction for relevance/ if we can disregard because it doesn't intersect for sure
-		if (L.dot(normalizeDir) < 0) {
-			return null;
-		}
-		double d = Math.sqrt(Math.pow(L.length(),2) - (Math.pow(L.dot(normalizeDir), 2)));
-		if (d > this.radius) {
+		// Works on primitives, only the hit and its normal are allocated.
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double t = distance(center.x, center.y, center.z, radius, o.x, o.y, o.z, d.x, d.y, d.z);
+		if (t == Ops.infinity)
 			return null;
+		return new Hit(t, normal(center.x, center.y, center.z, o.x, o.y, o.z, d.x, d.y, d.z, t));
+	}
 
-		}
-		// if it intersects, we use trigonometric functions to calculate intersection points with the sphere
-		double adj = L.dot(normalizeDir);
-		double hyp = Math.sqrt((Math.pow(this.radius, 2)) - (Math.pow(d,2)));
-		double t0 = adj - hyp, t1 = adj + hyp;
-		// now that we've calculated the two t values, we find the points on the sphere itself that are intersected with:
-		Point p = ray.source().add(normalizeDir.mult(t0));
-		Point p1 = ray.source().add(normalizeDir.mult(t1));
-		Vec norm2 = p1.sub(this.center).normalize();
-		Vec norm1 = p.sub(this.center).normalize();
-		// we calculate the nearest intersection by intersection distances
-		double pDist = p.sub(ray.source()).length();
-		double p1Dist = p1.sub(ray.source()).length();
-		// we check to avoid double calculation/errors
-		if (pDist > p1Dist) {
-			if (p1Dist > Ops.epsilon & p1Dist < Ops.infinity){
-				return new Hit(p1Dist, norm1);
-			}
-			return null;
-		} else{
-			if (pDist > Ops.epsilon & pDist < Ops.infinity){
-				return new Hit(pDist, norm2);
-			}
-			return null;
-		}
+	@Override
+	public boolean intersects(Ray ray, double maxDistance) {
+		Point o = ray.source();
+		Vec d = ray.direction();
+		return distance(center.x, center.y, center.z, radius, o.x, o.y, o.z, d.x, d.y, d.z) < maxDistance;
+	}
 
+	/**
+	 * Returns the distance along the ray (o, d) to the sphere (c, r), or
+	 * Ops.infinity if the ray doesn't hit it. The direction of the ray is
+	 * normalized, so the distance is the ray parameter t.
+	 */
+	static double distance(double cx, double cy, double cz, double r, double ox, double oy, double oz, double dx,
+			double dy, double dz) {
+		double lx = cx - ox, ly = cy - oy, lz = cz - oz;
+		double adj = lx * dx + ly * dy + lz * dz;
+		// The sphere is behind the ray.
+		if (adj < 0)
+			return Ops.infinity;
+		// The squared distance from the center to the ray.
+		double d2 = lx * lx + ly * ly + lz * lz - adj * adj;
+		double r2 = r * r;
+		if (d2 > r2)
+			return Ops.infinity;
+		double t = adj - Math.sqrt(r2 - d2);
+		return t > Ops.epsilon & t < Ops.infinity ? t : Ops.infinity;
+	}
 
+	/**
+	 * Returns the normal to the sphere (c, r) for the hit at distance t along the
+	 * ray (o, d).
+	 */
+	static Vec normal(double cx, double cy, double cz, double ox, double oy, double oz, double dx, double dy,
+			double dz, double t) {
+		// The shading has always used the normal at the second intersection
+		// point of the ray with the sphere (where the ray leaves it), which lies
+		// symmetrically to the hit around the middle of the chord.
+		double adj = (cx - ox) * dx + (cy - oy) * dy + (cz - oz) * dz;
+		double far = 2 * adj - t;
+		double nx = (ox + far * dx) - cx, ny = (oy + far * dy) - cy, nz = (oz + far * dz) - cz;
+		double s = 1.0 / Math.sqrt(nx * nx + ny * ny + nz * nz);
+		return new Vec(s * nx, s * ny, s * nz);
 	}
 }
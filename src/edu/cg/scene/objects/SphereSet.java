@@ -0,0 +1,204 @@
+package edu.cg.scene.objects;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+
+/**
+ * A set of spheres packed in primitive arrays (one array per coordinate of the
+ * centers and one for the radii), so a ray can be tested against many spheres
+ * without touching a Sphere or a Point object.
+ *
+ * The spheres are tested in batches of LANES with independent computations per
+ * lane, which the JIT can schedule together. The set keeps the surface of every
+ * sphere for the hits, and can also be used to add many spheres to a scene at
+ * once (see Scene.addSpheres).
+ */
+public class SphereSet implements Intersectable {
+	// The number of spheres tested together.
+	public static final int LANES = 4;
+
+	private double[] cx;
+	private double[] cy;
+	private double[] cz;
+	private double[] radius;
+	private Surface[] surfaces;
+	private int size = 0;
+
+	public SphereSet() {
+		this(16);
+	}
+
+	public SphereSet(int capacity) {
+		capacity = Math.max(capacity, LANES);
+		cx = new double[capacity];
+		cy = new double[capacity];
+		cz = new double[capacity];
+		radius = new double[capacity];
+		surfaces = new Surface[capacity];
+	}
+
+	/**
+	 * Adds a sphere with the given material.
+	 */
+	public SphereSet add(Point center, double radius, Material material) {
+		return add(new Surface(new Sphere(center, radius), material));
+	}
+
+	/**
+	 * Adds a surface. Its shape must be a sphere (and not of a subclass, which may
+	 * intersect differently).
+	 */
+	public SphereSet add(Surface surface) {
+		if (!isSphere(surface))
+			throw new IllegalArgumentException("The shape of the surface is not a sphere: " + surface.shape());
+		if (size == surfaces.length)
+			grow();
+		Sphere sphere = (Sphere) surface.shape();
+		cx[size] = sphere.center().x;
+		cy[size] = sphere.center().y;
+		cz[size] = sphere.center().z;
+		radius[size] = sphere.radius();
+		surfaces[size] = surface;
+		size++;
+		return this;
+	}
+
+	public static boolean isSphere(Surface surface) {
+		return surface.shape() != null && surface.shape().getClass() == Sphere.class;
+	}
+
+	private void grow() {
+		int capacity = 2 * surfaces.length;
+		cx = Arrays.copyOf(cx, capacity);
+		cy = Arrays.copyOf(cy, capacity);
+		cz = Arrays.copyOf(cz, capacity);
+		radius = Arrays.copyOf(radius, capacity);
+		surfaces = Arrays.copyOf(surfaces, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Surface surface(int i) {
+		return surfaces[i];
+	}
+
+	public List<Surface> surfaces() {
+		return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(surfaces, size)));
+	}
+
+	@Override
+	public Hit intersect(Ray ray) {
+		int i = nearest(ray, 0, size, Ops.infinity);
+		return i < 0 ? null : hit(i, ray);
+	}
+
+	@Override
+	public boolean intersects(Ray ray, double maxDistance) {
+		return any(ray, 0, size, maxDistance);
+	}
+
+	/**
+	 * Returns the index of the sphere in [from, to) that the ray hits first,
+	 * closer than maxDistance, or -1 if there is no such sphere. On equal
+	 * distances the first sphere wins.
+	 */
+	public int nearest(Ray ray, int from, int to, double maxDistance) {
+		Point o = ray.source();
+		Vec d = ray.direction();
+		return nearest(o.x, o.y, o.z, d.x, d.y, d.z, from, to, maxDistance);
+	}
+
+	/**
+	 * Same as nearest(Ray, int, int, double) for the ray (o, d). The direction
+	 * must be normalized.
+	 */
+	public int nearest(double ox, double oy, double oz, double dx, double dy, double dz, int from, int to,
+			double maxDistance) {
+		int nearest = -1;
+		double tMin = maxDistance;
+		int i = from;
+		for (; i + LANES <= to; i += LANES) {
+			double t0 = Sphere.distance(cx[i], cy[i], cz[i], radius[i], ox, oy, oz, dx, dy, dz);
+			double t1 = Sphere.distance(cx[i + 1], cy[i + 1], cz[i + 1], radius[i + 1], ox, oy, oz, dx, dy, dz);
+			double t2 = Sphere.distance(cx[i + 2], cy[i + 2], cz[i + 2], radius[i + 2], ox, oy, oz, dx, dy, dz);
+			double t3 = Sphere.distance(cx[i + 3], cy[i + 3], cz[i + 3], radius[i + 3], ox, oy, oz, dx, dy, dz);
+			if (t0 < tMin) {
+				tMin = t0;
+				nearest = i;
+			}
+			if (t1 < tMin) {
+				tMin = t1;
+				nearest = i + 1;
+			}
+			if (t2 < tMin) {
+				tMin = t2;
+				nearest = i + 2;
+			}
+			if (t3 < tMin) {
+				tMin = t3;
+				nearest = i + 3;
+			}
+		}
+		for (; i < to; ++i) {
+			double t = Sphere.distance(cx[i], cy[i], cz[i], radius[i], ox, oy, oz, dx, dy, dz);
+			if (t < tMin) {
+				tMin = t;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Checks if the ray hits any sphere in [from, to) closer than maxDistance.
+	 */
+	public boolean any(Ray ray, int from, int to, double maxDistance) {
+		return first(ray, from, to, maxDistance) >= 0;
+	}
+
+	/**
+	 * Returns the index of the first sphere in [from, to) (in the order of the
+	 * set) that the ray hits closer than maxDistance, or -1 if there is none.
+	 */
+	public int first(Ray ray, int from, int to, double maxDistance) {
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double ox = o.x, oy = o.y, oz = o.z, dx = d.x, dy = d.y, dz = d.z;
+		// Shadow rays usually stop at the first blocker, so the spheres are tested
+		// one at a time.
+		for (int i = from; i < to; ++i)
+			if (Sphere.distance(cx[i], cy[i], cz[i], radius[i], ox, oy, oz, dx, dy, dz) < maxDistance)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the distance along the ray (o, d) to sphere i, or Ops.infinity if
+	 * the ray doesn't hit it. The direction must be normalized.
+	 */
+	public double distance(int i, double ox, double oy, double oz, double dx, double dy, double dz) {
+		return Sphere.distance(cx[i], cy[i], cz[i], radius[i], ox, oy, oz, dx, dy, dz);
+	}
+
+	/**
+	 * Returns the hit of the ray with sphere i (as found by nearest), with its
+	 * surface set.
+	 */
+	public Hit hit(int i, Ray ray) {
+		Point o = ray.source();
+		Vec d = ray.direction();
+		double t = Sphere.distance(cx[i], cy[i], cz[i], radius[i], o.x, o.y, o.z, d.x, d.y, d.z);
+		Hit hit = new Hit(t, Sphere.normal(cx[i], cy[i], cz[i], o.x, o.y, o.z, d.x, d.y, d.z, t));
+		hit.setSurface(surfaces[i]);
+		return hit;
+	}
+}
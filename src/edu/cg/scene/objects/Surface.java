@@ -1,5 +1,6 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.BoundingBox;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
@@ -23,6 +24,14 @@ public class Surface implements Intersectable {
 		return "Surface:" + endl + "Shape:" + endl + shape + endl + "Material: " + endl + material + endl;
 	}
 
+	public Shape shape() {
+		return shape;
+	}
+
+	public Material material() {
+		return material;
+	}
+
 	@Override
 	public Hit intersect(Ray ray) {
 		Hit hit = shape.intersect(ray);
@@ -31,6 +40,18 @@ public class Surface implements Intersectable {
 		return hit;
 	}
 
+	@Override
+	public boolean intersects(Ray ray, double maxDistance) {
+		return shape.intersects(ray, maxDistance);
+	}
+
+	/**
+	 * Returns the bounding box of the surface shape or null if it is unbounded.
+	 */
+	public BoundingBox boundingBox() {
+		return shape.boundingBox();
+	}
+
 	public Vec Ka() {
 		return material.Ka;
 	}